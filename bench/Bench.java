@@ -0,0 +1,246 @@
+import hlt.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Micro-benchmarks for the hot paths, over fixtures at 2 and 4 players with 10, 100 and 500
+ * ships (early, mid and late game sized), taken from recorded games where there are any; see
+ * {@link Fixtures}. The source of each fixture is printed first.
+ *
+ * Each benchmark is warmed up, then timed over several rounds; the median time per operation
+ * and the mean bytes allocated per operation are printed, one line per benchmark and fixture,
+ * in a fixed order so that runs on two commits can be compared with diff.
+ *
+ * Usage: java [-Dbench.recordings=dir] Bench [name filter]
+ */
+public class Bench {
+
+    private static final long WARMUP_NANOS = 300_000_000L;
+    private static final long ROUND_NANOS = 200_000_000L;
+    private static final int ROUNDS = 5;
+
+    private static final int[] PLAYERS = {2, 4};
+    private static final int[] SHIPS = {10, 100, 500};
+
+    /** One benchmark bound to a fixture; run() is the measured operation */
+    interface Op {
+        void run();
+    }
+
+    interface Setup {
+        /** @return the operation, or null if the fixture does not apply */
+        Op setup(Fixtures fixture);
+    }
+
+    private static final List<String> names = new ArrayList<>();
+    private static final List<Setup> setups = new ArrayList<>();
+    private static final com.sun.management.ThreadMXBean ALLOCATION =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+                    ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+    // Results are consumed here so that the JIT cannot drop the work
+    static long sink;
+
+    public static void main(final String[] args) {
+        final String filter = args.length > 0 ? args[0] : "";
+        register();
+
+        final List<Fixtures> fixtures = new ArrayList<>();
+        for (final int players : PLAYERS) {
+            for (final int ships : SHIPS) {
+                fixtures.add(new Fixtures(players, ships, 42));
+            }
+        }
+
+        for (final Fixtures fixture : fixtures) {
+            System.out.printf("# fixture %-8s %s%n", fixture.name, fixture.source);
+        }
+        System.out.printf("%-28s %-8s %14s %12s%n", "# benchmark", "fixture", "ns/op", "B/op");
+        for (int b = 0; b < names.size(); ++b) {
+            if (!names.get(b).contains(filter)) continue;
+            for (final Fixtures fixture : fixtures) {
+                final Op op = setups.get(b).setup(fixture);
+                if (op == null) continue;
+                measure(names.get(b), fixture.name, op);
+            }
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    private static void register() {
+        add("collision.segmentCircle", fixture -> {
+            // A short path from every ship, against every planet
+            final WorldState world = fixture.map(0).getWorld();
+            final int n = world.getShipCount();
+            final int planets = world.getPlanetCount();
+            return () -> {
+                int hits = 0;
+                for (int s = 0; s < n; ++s) {
+                    final double x = world.getShipX(s), y = world.getShipY(s);
+                    for (int p = 0; p < planets; ++p) {
+                        if (Collision.segmentCircleIntersect(x, y, x + 7, y + 3, world.getPlanetX(p), world.getPlanetY(p),
+                                world.getPlanetRadius(p), Constants.FORECAST_FUDGE_FACTOR)) ++hits;
+                    }
+                }
+                sink += hits;
+            };
+        });
+
+        add("collision.segmentCircles", fixture -> {
+            // The same paths, each tested against all planets as one batch
+            final WorldState world = fixture.map(0).getWorld();
+            final int n = world.getShipCount();
+            final int planets = world.getPlanetCount();
+            final int[] hits = new int[planets];
+            return () -> {
+                int total = 0;
+                for (int s = 0; s < n; ++s) {
+                    final double x = world.getShipX(s), y = world.getShipY(s);
+                    total += Collision.segmentCirclesIntersect(x, y, x + 7, y + 3, world.planetXs(), world.planetYs(),
+                            world.planetRadii(), planets, Constants.FORECAST_FUDGE_FACTOR, hits);
+                }
+                sink += total;
+            };
+        });
+
+        add("map.update", fixture -> {
+            // Read and parse the frame text, then rebuild the map
+            final GameMap map = new GameMap(fixture.width, fixture.height, 0);
+            final FrameReader reader = new FrameReader(new RepeatingInputStream(fixture.bytes()));
+            return () -> {
+                try {
+                    reader.nextLine();
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                map.updateMap(reader);
+                sink += map.getAllShips().size();
+            };
+        });
+
+        add("index.rebuild", fixture -> {
+            final GameMap map = fixture.map(0);
+            final WorldState world = map.getWorld();
+            final SpatialIndex index = map.getShipIndex();
+            return () -> {
+                index.rebuild(world.getShipCount(), world.shipXs(), world.shipYs(), world.shipRadii());
+                sink += index.getCount();
+            };
+        });
+
+        add("navigation.towardsTarget", fixture -> {
+            // Each of our undocked ships towards a random planet, avoiding obstacles
+            final GameMap map = fixture.map(0);
+            final List<Ship> ships = new ArrayList<>();
+            for (final Ship ship : map.getMyPlayer().getShips()) {
+                if (ship.getDockingStatus() == Ship.DockingStatus.Undocked) ships.add(ship);
+            }
+            if (ships.isEmpty()) return null;
+            final List<Planet> planets = new ArrayList<>(map.getAllPlanets().values());
+            final Random random = new Random(1);
+            final Position[] targets = new Position[ships.size()];
+            for (int i = 0; i < targets.length; ++i) {
+                final Planet planet = planets.get(random.nextInt(planets.size()));
+                targets[i] = new Position(planet.getXPos(), planet.getYPos());
+            }
+            return () -> {
+                for (int i = 0; i < targets.length; ++i) {
+                    final ThrustMove move = Navigation.navigateShipTowardsTarget(map, ships.get(i), targets[i],
+                            Constants.MAX_SPEED, true, 20, Math.toRadians(5));
+                    if (move != null) sink += move.getAngle();
+                }
+            };
+        });
+
+        add("defence.getThreats", fixture -> {
+            final GameMap map = fixture.map(0);
+            final List<Planet> ours = new ArrayList<>();
+            for (final Planet planet : map.getAllPlanets().values()) {
+                if (planet.isOwned()) ours.add(planet);
+            }
+            return () -> sink += Defence.getThreats(ours, map).size();
+        });
+
+        add("bot.makeMove", fixture -> {
+            final GameMap map = fixture.map(0);
+            if (map.getMyPlayer().getShips().size() < 3) return null;
+            // A budget that never runs out, so that every turn does the full work
+            final TurnScheduler scheduler = new TurnScheduler(Long.MAX_VALUE / 4);
+            final GameBot bot = new GameBot(map, scheduler, 1);
+            bot.makeMove(); // opening move
+            return () -> {
+                scheduler.startTurn();
+                sink += bot.makeMove().size();
+            };
+        });
+    }
+
+    private static void add(final String name, final Setup setup) {
+        names.add(name);
+        setups.add(setup);
+    }
+
+    private static void measure(final String name, final String fixture, final Op op) {
+        final long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        long batch = 1;
+        while (System.nanoTime() < warmupEnd) {
+            for (long i = 0; i < batch; ++i) op.run();
+            batch = Math.min(batch * 2, 1 << 20);
+        }
+
+        final double[] nanosPerOp = new double[ROUNDS];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int round = 0; round < ROUNDS; ++round) {
+            final long bytesBefore = allocatedBytes();
+            final long start = System.nanoTime();
+            long ops = 0;
+            long elapsed;
+            do {
+                op.run();
+                ++ops;
+            } while ((elapsed = System.nanoTime() - start) < ROUND_NANOS);
+            totalBytes += allocatedBytes() - bytesBefore;
+            totalOps += ops;
+            nanosPerOp[round] = (double) elapsed / ops;
+        }
+        Arrays.sort(nanosPerOp);
+        final long bytesPerOp = ALLOCATION != null ? totalBytes / totalOps : -1;
+        System.out.printf("%-28s %-8s %14.1f %12d%n", name, fixture, nanosPerOp[ROUNDS / 2], bytesPerOp);
+    }
+
+    // Bytes allocated by this thread so far, or 0 if the JVM cannot tell (reported as -1 B/op)
+    private static long allocatedBytes() {
+        return ALLOCATION != null ? ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /** Serves the same bytes over and over, so a frame can be read any number of times */
+    private static final class RepeatingInputStream extends InputStream {
+        private final byte[] bytes;
+        private int position;
+
+        RepeatingInputStream(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            final int b = bytes[position];
+            position = (position + 1) % bytes.length;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) {
+            final int n = Math.min(length, bytes.length - position);
+            System.arraycopy(bytes, position, buffer, offset, n);
+            position = (position + n) % bytes.length;
+            return n;
+        }
+    }
+}
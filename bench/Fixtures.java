@@ -0,0 +1,222 @@
+import hlt.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmark frames with a given number of players and ships.
+ *
+ * Frames are taken from games recorded with {@code MyBot --record file}, so that they have the
+ * density and clustering of real play: the {@code .rec} files in the directory named by the
+ * {@code bench.recordings} property, {@code bench/recordings} by default, are read in name
+ * order, and the fixture is the first frame of a game with that many players in which the
+ * ships reach that number.
+ *
+ * When no recording has such a frame, the fixture is synthetic instead: a simulator-generated
+ * map where some planets are owned with ships docked on them, and the rest of the ships are
+ * undocked and placed at random clear of planets. The same arguments always give the same frame.
+ */
+public class Fixtures {
+
+    public static final int WIDTH = 240;
+    public static final int HEIGHT = 160;
+
+    private static final String RECORDINGS = System.getProperty("bench.recordings", "bench/recordings");
+
+    final String name;
+    final int players;
+    final int ships;
+    final int width;
+    final int height;
+    // The frame as the engine sends it, without the newline
+    final String line;
+    // Where the frame came from, for the benchmark report
+    final String source;
+
+    Fixtures(final int players, final int ships, final long seed) {
+        this.players = players;
+        this.ships = ships;
+        this.name = players + "p-" + ships;
+        final Recorded recorded = findRecorded(players, ships);
+        if (recorded != null) {
+            width = recorded.width;
+            height = recorded.height;
+            line = recorded.line;
+            source = recorded.source;
+        } else {
+            width = WIDTH;
+            height = HEIGHT;
+            line = generate(players, ships, seed);
+            source = "synthetic, seed " + seed;
+        }
+    }
+
+    byte[] bytes() {
+        return (line + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return a fresh map of the frame as seen by the given player
+     */
+    GameMap map(final int playerId) {
+        final GameMap map = new GameMap(width, height, playerId);
+        final FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes()));
+        try {
+            reader.nextLine();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        map.updateMap(reader);
+        return map;
+    }
+
+    private static final class Recorded {
+        int width;
+        int height;
+        String line;
+        String source;
+    }
+
+    private static Recorded findRecorded(final int players, final int ships) {
+        final File[] files = new File(RECORDINGS).listFiles((dir, file) -> file.endsWith(".rec"));
+        if (files == null) return null;
+        Arrays.sort(files);
+        for (final File file : files) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                final Recorded recorded = findRecorded(new Recording(in), players, ships);
+                if (recorded != null) {
+                    recorded.source = file.getName() + " " + recorded.source;
+                    return recorded;
+                }
+            } catch (final IOException | IllegalStateException e) {
+                // Unreadable, or a frame that does not parse
+                System.err.println("# skipping " + file + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    // First frame of the recording with the given players and at least the given ships, or null
+    private static Recorded findRecorded(final Recording recording, final int players, final int ships)
+            throws IOException {
+        // The bot's id, then the map size, then one frame per turn
+        if (nextFrame(recording) == null) return null;
+        final FrameReader size = nextFrame(recording);
+        if (size == null) return null;
+        final Recorded recorded = new Recorded();
+        recorded.width = size.nextInt();
+        recorded.height = size.nextInt();
+        int turn = 0;
+        for (FrameReader frame = nextFrame(recording); frame != null; frame = nextFrame(recording), ++turn) {
+            final GameMap map = new GameMap(recorded.width, recorded.height, 0);
+            map.updateMap(frame);
+            if (map.getWorld().getPlayerCount() != players) return null;
+            if (map.getWorld().getShipCount() < ships) continue;
+            recorded.line = new String(recording.getBytes(), 0, recording.getLength(), StandardCharsets.US_ASCII);
+            recorded.source = "turn " + turn;
+            return recorded;
+        }
+        return null;
+    }
+
+    // The next line received in the recording, skipping the commands sent; null at the end
+    private static FrameReader nextFrame(final Recording recording) throws IOException {
+        int type;
+        while ((type = recording.next()) == Recording.MOVES) {
+            // only frames matter here
+        }
+        if (type != Recording.FRAME) return null;
+        final byte[] line = Arrays.copyOf(recording.getBytes(), recording.getLength() + 1);
+        line[line.length - 1] = '\n';
+        final FrameReader reader = new FrameReader(new ByteArrayInputStream(line));
+        if (!reader.nextLine()) return null;
+        return reader;
+    }
+
+    private static String generate(final int players, final int shipCount, final long seed) {
+        final Random random = new Random(seed);
+        // Planets from the simulator's map generator
+        final GameMap base = new GameMap(WIDTH, HEIGHT, 0);
+        base.updateMap(new Simulator(players, WIDTH, HEIGHT, seed).frame());
+        final WorldState world = base.getWorld();
+        final int planetCount = world.getPlanetCount();
+
+        // Owned planets and the ships docked on them, at most a third of the ships
+        final int[] owners = new int[planetCount];
+        final int[] dockedCounts = new int[planetCount];
+        int docked = 0;
+        for (int p = 0; p < planetCount; ++p) {
+            owners[p] = random.nextBoolean() ? random.nextInt(players) : -1;
+            if (owners[p] == -1) continue;
+            dockedCounts[p] = Math.min(1 + random.nextInt(world.getPlanetDockingSpots(p)), shipCount / 3 - docked);
+            if (dockedCounts[p] <= 0) {
+                owners[p] = -1;
+                dockedCounts[p] = 0;
+            }
+            docked += dockedCounts[p];
+        }
+
+        // Ships per player: docked ones first, then undocked ones at random clear positions
+        final StringBuilder[] playerShips = new StringBuilder[players];
+        final int[] counts = new int[players];
+        for (int i = 0; i < players; ++i) playerShips[i] = new StringBuilder();
+        final StringBuilder planetText = new StringBuilder();
+        int nextId = 0;
+        for (int p = 0; p < planetCount; ++p) {
+            final StringBuilder dockedIds = new StringBuilder();
+            for (int k = 0; k < dockedCounts[p]; ++k) {
+                final double angle = 2 * Math.PI * k / dockedCounts[p];
+                final double distance = world.getPlanetRadius(p) + Constants.SHIP_RADIUS + 0.5;
+                appendShip(playerShips[owners[p]], nextId,
+                        world.getPlanetX(p) + distance * Math.cos(angle),
+                        world.getPlanetY(p) + distance * Math.sin(angle),
+                        Ship.DockingStatus.Docked.ordinal(), world.getPlanetId(p));
+                ++counts[owners[p]];
+                dockedIds.append(' ').append(nextId++);
+            }
+            planetText.append(String.format(Locale.ROOT, " %d %.4f %.4f %d %.4f %d %d %d %d %d %d%s",
+                    world.getPlanetId(p), world.getPlanetX(p), world.getPlanetY(p), world.getPlanetHealth(p),
+                    world.getPlanetRadius(p), world.getPlanetDockingSpots(p), 0, 1000,
+                    owners[p] == -1 ? 0 : 1, Math.max(owners[p], 0), dockedCounts[p], dockedIds));
+        }
+        for (int i = docked; i < shipCount; ++i) {
+            final int owner = i % players;
+            double x, y;
+            do {
+                x = 1 + random.nextDouble() * (WIDTH - 2);
+                y = 1 + random.nextDouble() * (HEIGHT - 2);
+            } while (insidePlanet(world, x, y));
+            appendShip(playerShips[owner], nextId++, x, y, Ship.DockingStatus.Undocked.ordinal(), 0);
+            ++counts[owner];
+        }
+
+        final StringBuilder line = new StringBuilder().append(players);
+        for (int i = 0; i < players; ++i) {
+            line.append(' ').append(i).append(' ').append(counts[i]).append(playerShips[i]);
+        }
+        line.append(' ').append(planetCount).append(planetText);
+        return line.toString();
+    }
+
+    private static void appendShip(final StringBuilder out, final int id, final double x, final double y,
+                                   final int status, final int planet) {
+        out.append(String.format(Locale.ROOT, " %d %.4f %.4f %d 0.0 0.0 %d %d 0 0",
+                id, x, y, Constants.BASE_SHIP_HEALTH, status, planet));
+    }
+
+    private static boolean insidePlanet(final WorldState world, final double x, final double y) {
+        for (int p = 0; p < world.getPlanetCount(); ++p) {
+            final double dx = world.getPlanetX(p) - x;
+            final double dy = world.getPlanetY(p) - y;
+            final double limit = world.getPlanetRadius(p) + 2;
+            if (dx * dx + dy * dy < limit * limit) return true;
+        }
+        return false;
+    }
+}
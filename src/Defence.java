@@ -1,140 +1,88 @@
 import hlt.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.stream.Collectors;
 
 public class Defence {
 
+    // Per-thread scratch space, so that threats can be gathered from several threads at once
+    private static final ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(Scratch::new);
+
+    private static final class Scratch {
+        // Query results buffer, grown to hold every ship
+        int[] found = new int[0];
+        // Per ship slot: the call that last reported it, so that ships near several planets are reported once
+        int[] reported = new int[0];
+        int call;
+    }
+
     /**
      * Get collection of enemy ships that threaten owned planets
      * @param myPlanets List of planets by us
-     * @return ArrayList of enemy ships near owned planets
+     * @param gameMap The game map whose ship index is queried
+     * @return ArrayList of enemy ships near owned planets, each ship once
      */
-    public static ArrayList<Ship> getThreats(Collection<Planet> myPlanets, GameGrid grid) {
-        ArrayList<Ship> result = new ArrayList<>();
-        for (final Planet planet : myPlanets) {
-            final double watchRadius = planet.getRadius() + Constants.DOCK_RADIUS * 3;
-            grid.getGroupScaled(planet, watchRadius).stream().filter(entity -> {
-                if (entity instanceof Ship) {
-                    final Ship ship = (Ship) entity;
-                    return ship.getOwner() != planet.getOwner() && ship.getDistanceTo(planet) <= watchRadius;
-                }
-                return false;
-            }).forEach(entity -> result.add((Ship) entity));
-        }
-        return result;
+    public static ArrayList<Ship> getThreats(Collection<Planet> myPlanets, GameMap gameMap) {
+        return getThreats(myPlanets, gameMap, null, 0);
     }
 
-    public static class GameGrid {
-        public static final int SCALE = 7;
-        private ArrayList<ArrayList<ArrayList<Entity>>> grid;
-
-        /**
-         * Sets up empty spatial grid with correct dimensions
-         * @param gMap The game map to generate the grid from
-         */
-        public GameGrid(GameMap gMap) {
-            final int gridW = gMap.getWidth() / SCALE + 1;
-            final int gridH = gMap.getHeight() / SCALE + 1;
-            grid = new ArrayList<>(gridW);
-            for (int x = 0; x < gridW; x++) {
-                ArrayList<ArrayList<Entity>> gridCol = new ArrayList<>(gridH);
-                for (int y = 0; y < gridH; y++) {
-                    gridCol.add(new ArrayList<>());
-                }
-                grid.add(gridCol);
-            }
-        }
-
-        /**
-         * Update the grid for moved planets on each turn
-         * @param gMap
-         */
-        public void update(GameMap gMap) {
-            // clear grid
-            for (ArrayList<ArrayList<Entity>> gridCol : grid) {
-                for (ArrayList<Entity> gridCell : gridCol) {
-                    gridCell.clear();
-                }
-            }
-
-            for (final Ship ship : gMap.getAllShips()) {
-                add(scale(ship.getXPos()), scale(ship.getYPos()), ship);
-            }
-
-            for (final Planet planet : gMap.getAllPlanets().values()) {
-                final int startX = scale(planet.getXPos() - planet.getRadius());
-                final int endX = scale(planet.getXPos() + planet.getRadius());
-                final int startY = scale(planet.getYPos() - planet.getRadius());
-                final int endY = scale(planet.getYPos() + planet.getRadius());
-                for (int x = startX; x < endX; x++) {
-                    for (int y = startY; y < endY; y++) {
-                        add(x, y, planet);
-                    }
-                }
-            }
-        }
-
-        /**
-         * Get the scaled coordinate value
-         * @param pos the REAL coordinate in the game map
-         * @return the scaled grid coordinate
-         */
-        public int scale(double pos) {
-            return (int) (pos / SCALE);
+    /**
+     * Get collection of enemy ships that threaten owned planets now or, on their current course,
+     * within the given number of turns
+     * @param motion velocities of the ships, or null to only consider where ships are now
+     * @param lookahead turns to look ahead
+     * @return ArrayList of enemy ships near or heading for owned planets, each ship once
+     */
+    public static ArrayList<Ship> getThreats(Collection<Planet> myPlanets, GameMap gameMap,
+                                             MotionTracker motion, int lookahead) {
+        final WorldState world = gameMap.getWorld();
+        final SpatialIndex ships = gameMap.getShipIndex();
+        final Scratch scratch = scratches.get();
+        if (scratch.found.length < ships.getCount()) {
+            scratch.found = new int[ships.getCount()];
+            scratch.reported = new int[ships.getCount()];
         }
-
-        public ArrayList<Entity> getGroupScaled(Position pos, double radius) {
-            final int x = scale(pos.getXPos());
-            final int y = scale(pos.getYPos());
-            final int r = scale(radius);
-            return getGroup(x, y, r);
+        if (++scratch.call == Integer.MAX_VALUE) {
+            Arrays.fill(scratch.reported, 0);
+            scratch.call = 1;
         }
+        final int[] found = scratch.found;
+        final int[] reported = scratch.reported;
+        final int call = scratch.call;
+        // Ships can cover at most this much more ground before the lookahead is up
+        final double reach = motion == null ? 0 : Constants.MAX_SPEED * lookahead;
 
-        // TODO FIX SCALE
-        public ArrayList<Entity> getGroup(int x, int y, int r) {
-            ArrayList<Entity> result = new ArrayList<>();
-            for (int i = x - r + 1; i < x + r; i++) {
-                for (int j = y - r + 1; j < y + r; j++) {
-                    result.addAll(get(i, j));
-                }
+        ArrayList<Ship> result = new ArrayList<>();
+        for (final Planet planet : myPlanets) {
+            final double watchRadius = planet.getRadius() + Constants.DOCK_RADIUS * 3;
+            final int owner = planet.getOwner();
+            // Circle query matches on overlap; shrink by the ship radius so ship centres are within watchRadius
+            final int count = ships.queryCircle(planet.getXPos(), planet.getYPos(),
+                    watchRadius + reach - Constants.SHIP_RADIUS, found);
+            for (int i = 0; i < count; ++i) {
+                final int slot = found[i];
+                if (world.getShipOwner(slot) == owner || reported[slot] == call) continue;
+                if (reach > 0 && !isHeadingInto(world, slot, planet, watchRadius, motion, lookahead)) continue;
+                reported[slot] = call;
+                result.add(world.getShip(slot));
             }
-            return result;
-        }
-
-        /**
-         * Get list of entities that are in the same grid as matched by given position
-         * @param position the REAL position
-         * @return list of entities
-         */
-        public ArrayList<Entity> getScaled(Position position) {
-            return get(scale(position.getXPos()), scale(position.getYPos()));
-        }
-
-        public ArrayList<Entity> get(int x, int y) {
-            if (x >= 0 && x < grid.size()
-                    && y >= 0 && y < grid.get(0).size())
-                return grid.get(x).get(y);
-            else
-                return new ArrayList<>();
-        }
-
-        private void clear(int x, int y) {
-            get(x, y).clear();
-        }
-
-        /**
-         * Adds entity to grid at given coordinates
-         * @param x the SCALED x coordinate on the grid
-         * @param y the SCALED y coordinate on the grid
-         * @param entity
-         */
-        private void add(int x, int y, Entity entity) {
-            if (x >= 0 && x < grid.size()
-                    && y >= 0 && y < grid.get(0).size())
-                get(x, y).add(entity);
         }
+        return result;
     }
 
+    // Whether the ship is within the watch radius now, or passes within it on its course over the lookahead
+    private static boolean isHeadingInto(WorldState world, int slot, Planet planet, double watchRadius,
+                                         MotionTracker motion, int lookahead) {
+        final double x = world.getShipX(slot);
+        final double y = world.getShipY(slot);
+        final double dx = x - planet.getXPos();
+        final double dy = y - planet.getYPos();
+        if (dx * dx + dy * dy <= watchRadius * watchRadius) return true;
+        final int owner = world.getShipOwner(slot);
+        final int id = world.getShipId(slot);
+        return Collision.segmentCircleIntersect(x, y,
+                x + motion.getVelocityX(owner, id) * lookahead, y + motion.getVelocityY(owner, id) * lookahead,
+                planet.getXPos(), planet.getYPos(), watchRadius, 0);
+    }
 }
@@ -1,26 +1,102 @@
 import hlt.*;
 import java.net.ConnectException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class GameBot {
     private GameMap gameMap;
-    private HashMap<Integer, Integer> targets; // Ship ID -> Planet ID
+    private final IntIntMap targets = new IntIntMap(-1); // Ship ID -> Planet ID
+    // Kept up to date from the world delta
     private int numOwnedPlanets;
-    private ArrayList<Planet> ourPlanets;
+    // Planets we own, by planet id
+    private boolean[] ourPlanetIds;
+    private final ArrayList<Planet> ourPlanets = new ArrayList<>();
     private final static int NAV_NUM_CORRECTIONS = 20;
     private final static int OFFENSE_THRESHOLD = 4;
     private int turnCount;
-    // number of undocked ships that are targeting planet
-    private HashMap<Planet, Integer> incoming;
-    private Defence.GameGrid grid;
+    // number of undocked ships that are targeting planet, by planet id
+    private int[] incoming;
     // Override target for enemy ships
-    private HashMap<Integer, Ship> shipTargets; // Ship ID -> Enemy Ship target
+    private final IntObjMap<Ship> shipTargets = new IntObjMap<>(); // Ship ID -> Enemy Ship target
     private int destroyer;
+    private final MovePlanner planner;
+    private final PlanetTable planetTable;
+    private final Auction auction = new Auction();
+    // Planets each ship bids for, nearest first
+    private static final int AUCTION_CANDIDATES = 6;
+    // Assignments costing more turns than this are not worth making
+    private static final double AUCTION_MAX_COST = 60;
+    // Costs in turns of travel
+    private static final double ENEMY_SHIP_COST = 2;
+    private static final double ATTACK_COST = 5;
+    private static final double RETARGET_COST = 2;
+    // Ships that can join a fight within the turns it is simulated for
+    private static final double ENGAGE_RADIUS = 4 * Constants.WEAPON_RADIUS;
+    private static final int COMBAT_TURNS = 4;
+    // Fight estimates run from the planning threads
+    private final ThreadLocal<Combat> combats = ThreadLocal.withInitial(Combat::new);
+    // Enemy strength around each planet, by planet id
+    private float[] enemiesNear = new float[0];
+    // Docking points sampled per planet for the enemy strength around it
+    private static final int STRENGTH_SAMPLES = 8;
+    private final InfluenceMap influence;
+    private final MotionTracker motion;
+    // Enemy ships heading for our planets are threats this many turns ahead
+    private static final int THREAT_LOOKAHEAD = 2;
+    private final Router router;
+    // Ship ID -> route around planets to its target; written while planning, one ship per thread
+    private final Map<Integer, Router.Route> routes = new ConcurrentHashMap<>();
+    // Targets closer than this are left to local navigation
+    private static final double ROUTE_MIN_DISTANCE = 2 * Constants.MAX_SPEED;
+    private final TurnScheduler scheduler;
+    private final int defencePhase;
+    private final int targetPhase;
+    private final int navigationPhase;
 
-    public GameBot(GameMap g) {
+    private final long seed;
+    // Plan ships on the common ForkJoin pool
+    private boolean parallel;
+
+    // What an undocked ship is going for this turn, and the move proposed for it
+    private static final class ShipOrder {
+        final Ship ship;
+        Ship enemy;
+        Planet planet;
+        Move proposal;
+        // navigation budget ran out before this ship was planned
+        boolean late;
+        // destroyer found nothing left to destroy
+        boolean dropDestroyer;
+        // Outcome of the last fight estimated for this ship, and where, as the ship may be planned twice
+        double fightX = Double.NaN, fightY = Double.NaN;
+        boolean fightLost;
+
+        ShipOrder(Ship ship) {
+            this.ship = ship;
+        }
+    }
+
+    public GameBot(GameMap g, TurnScheduler scheduler) {
+        this(g, scheduler, System.nanoTime());
+    }
+
+    /**
+     * @param seed seed for the bot's random choices; the same seed and frames give the same moves
+     */
+    public GameBot(GameMap g, TurnScheduler scheduler, long seed) {
         this.gameMap = g;
+        this.seed = seed;
         this.destroyer = -1;
+        this.planner = new MovePlanner(g);
+        this.planetTable = new PlanetTable(g);
+        this.influence = new InfluenceMap(g, ENGAGE_RADIUS, 4);
+        this.motion = new MotionTracker(g);
+        this.router = new Router(g);
+        this.scheduler = scheduler;
+        defencePhase = scheduler.addPhase("defence", 0.1);
+        targetPhase = scheduler.addPhase("targets", 0.25);
+        navigationPhase = scheduler.addPhase("navigation", 0.6);
 
         // We now have 1 full minute to analyse the initial map.
         final String initialMapIntelligence =
@@ -30,54 +106,82 @@ public class GameBot {
                         "; planets: " + gameMap.getAllPlanets().size();
         Log.log(initialMapIntelligence);
 
-        targets = new HashMap<>();
-        shipTargets = new HashMap<>();
+        int objects = 0;
+        for (final Planet planet : gameMap.getAllPlanets().values()) {
+            objects = Math.max(objects, planet.getId() + 1);
+        }
+        ourPlanetIds = new boolean[objects];
+        incoming = new int[objects];
 
-        final ArrayList<Ship> ourShips = new ArrayList<>(gameMap.getMyPlayer().getShips().values());
+        final List<Ship> ourShips = gameMap.getMyPlayer().getShips();
         final Optional<Ship> enemyShip = gameMap.getAllShips().stream().filter(s -> s.getOwner() == gameMap.getMyPlayerId())
                 .findFirst();
         final boolean destroyMode = gameMap.getAllPlayers().size() == 2
                 && enemyShip.isPresent()
-                && enemyShip.get().getDistanceTo(ourShips.get(0)) < 125;
+                && enemyShip.get().isCloserThan(ourShips.get(0), 125);
         if (destroyMode)
             destroyer = ourShips.get(0).getId();
         // For each ship, set up an initial planet to target
-        for (final Ship ship : gameMap.getMyPlayer().getShips().values()) {
+        final boolean[] targeted = new boolean[objects];
+        for (final Ship ship : gameMap.getMyPlayer().getShips()) {
             // Set target planet
-            for (final Planet planet : getPlanetsByDistance(ship)) {
-                if (!targets.containsValue(planet.getId())) {
-                    targets.put(ship.getId(), planet.getId());
-                    break;
-                }
-            }
+            final int planetId = planetTable.nearest(ship.getXPos(), ship.getYPos(), id -> !targeted[id]);
+            if (planetId == -1) continue;
+            targets.put(ship.getId(), planetId);
+            targeted[planetId] = true;
         }
-        grid = new Defence.GameGrid(gameMap);
         turnCount = 0;
+
+        for (final Planet planet : gameMap.getAllPlanets().values()) {
+            if (planet.isOwned()) ++numOwnedPlanets;
+            if (planet.getOwner() == gameMap.getMyPlayerId()) ourPlanetIds[planet.getId()] = true;
+        }
+        gameMap.addListener(this::worldUpdated);
+    }
+
+    // Keep per-ship and per-planet state in step with the world
+    private void worldUpdated(GameMap map, WorldDelta delta) {
+        final int myId = map.getMyPlayerId();
+        for (int i = 0; i < delta.getDestroyedCount(); ++i) {
+            final int owner = delta.getDestroyedOwner(i);
+            final int id = delta.getDestroyedId(i);
+            if (owner == myId) {
+                targets.remove(id);
+                shipTargets.remove(id);
+                routes.remove(id);
+                if (destroyer == id) destroyer = -1;
+            } else {
+                shipTargets.removeIf(enemy -> enemy.getOwner() == owner && enemy.getId() == id);
+            }
+        }
+        final WorldState world = map.getWorld();
+        for (int i = 0; i < delta.getPlanetOwnerChangedCount(); ++i) {
+            final int slot = delta.getPlanetOwnerChangedSlot(i);
+            final int previous = delta.getPreviousPlanetOwner(i);
+            final int owner = world.getPlanetOwner(slot);
+            numOwnedPlanets += (owner != -1 ? 1 : 0) - (previous != -1 ? 1 : 0);
+            ourPlanetIds[world.getPlanetId(slot)] = owner == myId;
+        }
+        for (int i = 0; i < delta.getPlanetsDestroyedCount(); ++i) {
+            if (delta.getDestroyedPlanetOwner(i) != -1) --numOwnedPlanets;
+            ourPlanetIds[delta.getDestroyedPlanetId(i)] = false;
+        }
     }
 
     private void recalcIncoming() {
-        incoming = new HashMap<>();
-        for (final Ship ship : gameMap.getMyPlayer().getShips().values()) {
+        Arrays.fill(incoming, 0);
+        for (final Ship ship : gameMap.getMyPlayer().getShips()) {
             if (ship.getDockingStatus() == Ship.DockingStatus.Docked) continue;
-            if (!targets.containsKey(ship.getId())) continue;
+            final int target = targets.get(ship.getId());
+            if (target == -1) continue;
             // Increment incoming count of target planet
-            final Planet target = gameMap.getPlanet(targets.get(ship.getId()));
-            if (incoming.containsKey(target))
-                incoming.put(target, incoming.get(target) + 1);
-            else incoming.put(target, 1);
+            ++incoming[target];
         }
     }
 
-    private ArrayList<Planet> getPlanetsByDistance(Position pos) {
-        // Get a list of planets by distance to avg
-        ArrayList<Planet> planets = new ArrayList<>(gameMap.getAllPlanets().values());
-        planets.sort(Comparator.comparingDouble(p -> p.getDistanceTo(pos)));
-        return planets;
-    }
-
     private ArrayList<Move> firstMove() {
         ArrayList<Move> moves = new ArrayList<>();
-        ArrayList<Ship> ships = new ArrayList<>(gameMap.getMyPlayer().getShips().values());
+        ArrayList<Ship> ships = new ArrayList<>(gameMap.getMyPlayer().getShips());
         ships.sort(Comparator.comparingDouble(Ship::getYPos));
         // uppermost ship
         moves.add(new ThrustMove(ships.get(0), 0, Constants.MAX_SPEED));
@@ -91,137 +195,343 @@ public class GameBot {
     public ArrayList<Move> makeMove() {
         // Perform per-turn calculations
         if (turnCount == 0) return this.firstMove();
-        numOwnedPlanets = gameMap.getAllPlanets().values().stream()
-                .mapToInt(planet -> planet.isOwned() ? 1 : 0).sum();
-        ourPlanets = new ArrayList<>(gameMap.getAllPlanets().values());
-        ourPlanets.removeIf(p -> p.getOwner() != gameMap.getMyPlayerId());
+        ourPlanets.clear();
+        for (int planetId = 0; planetId < ourPlanetIds.length; ++planetId) {
+            if (ourPlanetIds[planetId]) ourPlanets.add(gameMap.getPlanet(planetId));
+        }
         ArrayList<Move> moveList = new ArrayList<>();
+        planner.begin();
+
+        scheduler.beginPhase(defencePhase);
         recalcIncoming(); // calculate incoming per planet
         assignDefence(); // retarget enemy ships near our planets
 
-        // Process each ship
-        for (final Ship ship : gameMap.getMyPlayer().getShips().values()) {
+        // Decide what each ship goes for; once out of time, ships keep their current target
+        scheduler.beginPhase(targetPhase);
+        final ArrayList<ShipOrder> orders = new ArrayList<>();
+        for (final Ship ship : gameMap.getMyPlayer().getShips()) {
             if (ship.getDockingStatus() != Ship.DockingStatus.Undocked) {
                 // TODO decide whether or not to undock
                 continue;
             }
-
-            // TODO PATCH
-            if (ship.getId() == destroyer) {
-                Move move = getDestroyerMove(ship);
-                if (move != null) moveList.add(move);
-                continue;
-            }
+            final ShipOrder order = new ShipOrder(ship);
+            orders.add(order);
 
             // If ship has been assigned a ship target
-            if (shipTargets.containsKey(ship.getId())) {
-                final Ship validate = shipTargets.get(ship.getId());
+            final Ship validate = shipTargets.get(ship.getId());
+            if (validate != null) {
                 final Ship enemyShip = gameMap.getShip(validate.getOwner(), validate.getId());
                 if (enemyShip == null) {
                     shipTargets.remove(ship.getId());
                 } else {
-                    ThrustMove move = approachEnemyShip(ship, enemyShip);
-                    if (move != null) {
-                        moveList.add(move);
-                        continue;
-                    }
+                    order.enemy = enemyShip;
                 }
             }
+        }
+        assignTargets(orders);
+        // Ships left out of the assignment fall back to choosing greedily
+        forEachOrder(orders, order -> {
+            // TODO PATCH
+            if (order.ship.getId() == destroyer || order.enemy != null || order.planet != null) return;
+            order.planet = scheduler.expired() ? currentTarget(order.ship) : chooseTarget(order.ship);
+        });
+
+        // Propose a move per ship against the start-of-turn snapshot
+        scheduler.beginPhase(navigationPhase);
+        forEachOrder(orders, order -> {
+            if (scheduler.expired()) order.late = true;
+            else order.proposal = planMove(order, null);
+        });
+        // Merge in ship order: keep proposals that are clear of the moves accepted so far, replan the rest.
+        // Once out of time, fall back to a cheap direct move
+        for (final ShipOrder order : orders) {
+            final Move move = order.late ? defaultMove(order) : resolve(order);
+            if (move != null) accept(moveList, move);
+            if (order.dropDestroyer) destroyer = -1;
+            if (order.planet != null) targets.put(order.ship.getId(), order.planet.getId());
+        }
+        scheduler.endPhase();
+        Log.debug(scheduler::summary);
+
+        turnCount++;
+        return moveList;
+    }
+
+    /**
+     * Assign planets to ships jointly, minimising the total cost over all ships: travel turns
+     * to the planet, docking spots left free by the docked ships and by our other ships
+     * already heading there, enemy ships nearby and, for enemy planets, the cost of the attack.
+     * Each ship only considers its nearest few planets, and the auction is warm started from
+     * last turn's targets so that a quiet turn takes only a few bids.
+     */
+    private void assignTargets(ArrayList<ShipOrder> orders) {
+        final int myId = gameMap.getMyPlayerId();
+        final boolean expand = ourPlanets.size() < OFFENSE_THRESHOLD &&
+                ((double) numOwnedPlanets / gameMap.getAllPlanets().size()) < 0.6;
+        int objects = 0;
+        for (final Planet planet : gameMap.getAllPlanets().values()) {
+            objects = Math.max(objects, planet.getId() + 1);
+        }
+        countEnemiesNear(objects);
+
+        auction.begin(objects);
+        for (final Planet planet : gameMap.getAllPlanets().values()) {
+            final int docked = planet.getDockedCount();
+            final int slots;
+            if (!planet.isOwned()) slots = planet.getDockingSpots();
+            else if (planet.getOwner() == myId) slots = planet.getDockingSpots() - docked;
+            else slots = expand ? 0 : docked + 1; // one attacker per docked ship, and one more
+            auction.setCapacity(planet.getId(), slots);
+        }
+
+        final ArrayList<ShipOrder> bidders = new ArrayList<>();
+        final int[] candidates = new int[AUCTION_CANDIDATES];
+        for (final ShipOrder order : orders) {
+            final Ship ship = order.ship;
+            if (ship.getId() == destroyer || order.enemy != null) continue;
+            final int current = targets.get(ship.getId());
+            auction.addPerson(current);
+            bidders.add(order);
+            final int n = planetTable.nearest(ship.getXPos(), ship.getYPos(), AUCTION_CANDIDATES, null, candidates);
+            for (int i = 0; i < n; ++i) {
+                final Planet planet = gameMap.getPlanet(candidates[i]);
+                final double cost = targetCost(ship, planet, current == planet.getId());
+                if (cost < AUCTION_MAX_COST) auction.addCandidate(planet.getId(), AUCTION_MAX_COST - cost);
+            }
+        }
 
-            if (!this.targets.containsKey(ship.getId())) {
-                decideTarget(ship);
+        final boolean complete = auction.solve(scheduler::expired);
+        for (int p = 0; p < bidders.size(); ++p) {
+            final int planetId = auction.getAssigned(p);
+            if (planetId != -1) bidders.get(p).planet = gameMap.getPlanet(planetId);
+        }
+        Log.debug(() -> String.format("Auction: %d ships, %d bids%s",
+                auction.getPersonCount(), auction.getBids(), complete ? "" : ", out of time"));
+    }
+
+    // Cost in turns of sending the ship to the planet
+    private double targetCost(Ship ship, Planet planet, boolean isCurrent) {
+        final double travel = Math.max(0,
+                ship.getDistanceTo(planet) - planet.getRadius() - Constants.DOCK_RADIUS) / Constants.MAX_SPEED;
+        double cost = travel + ENEMY_SHIP_COST * enemiesNear[planet.getId()];
+        if (planet.isOwned() && planet.getOwner() != gameMap.getMyPlayerId()) {
+            cost += ATTACK_COST;
+        } else {
+            // planets about to fill up are a worse bet, counting the other ships already on their way
+            final int others = incoming[planet.getId()] - (isCurrent ? 1 : 0);
+            final int free = planet.getDockingSpots() - planet.getDockedCount() - others;
+            cost += 1.0 / Math.max(1, free);
+        }
+        if (!isCurrent) cost += RETARGET_COST;
+        return cost;
+    }
+
+    // Strongest enemy presence at the planet's docking points, by planet id
+    private void countEnemiesNear(int objects) {
+        if (enemiesNear.length < objects) enemiesNear = new float[objects];
+        Arrays.fill(enemiesNear, 0);
+        for (final Planet planet : gameMap.getAllPlanets().values()) {
+            float strength = 0;
+            for (int k = 0; k < PlanetTable.DOCK_POINTS; k += PlanetTable.DOCK_POINTS / STRENGTH_SAMPLES) {
+                strength = Math.max(strength, influence.getEnemy(planetTable.getDockPointX(planet.getId(), k),
+                        planetTable.getDockPointY(planet.getId(), k)));
             }
+            enemiesNear[planet.getId()] = strength;
+        }
+    }
 
-            // Check whether target still exists
-            if (!targets.containsKey(ship.getId())) {
-                Log.log("NULL NULL NULL");
-                continue;
+    /**
+     * Run per-ship work for every order, on the ForkJoin pool in parallel mode. The work may
+     * only read bot state and write to its own order.
+     */
+    private void forEachOrder(ArrayList<ShipOrder> orders, Consumer<ShipOrder> work) {
+        if (parallel) orders.parallelStream().forEach(work);
+        else orders.forEach(work);
+    }
+
+    /**
+     * Plan ships on several threads. Moves are the same as in sequential mode.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    // Target planet of the ship, deciding a new one if it has none or it is no longer suitable
+    private Planet chooseTarget(Ship ship) {
+        Planet target = currentTarget(ship);
+        if (target == null) {
+            // No target, or target no longer exists; recalculate target
+            target = decideTarget(ship);
+        }
+
+        if (target == null) {
+            Log.log(Log.Level.WARN, "NULL NULL NULL");
+            return null;
+        }
+
+        if (target.isOwned()) {
+            if (target.getOwner() == gameMap.getMyPlayerId()) {
+                // Target is ours
+                if (target.isFull()) target = decideTarget(ship);
+            } else if (ourPlanets.size() < OFFENSE_THRESHOLD) {
+                // Target is opponent's and we don't have enough planets
+                target = decideTarget(ship);
             }
-            Planet target = gameMap.getPlanet(targets.get(ship.getId()));
-            if (target == null) {
-                // Target no longer exists; recalculate target
-                target = (Planet) decideTarget(ship);
+        }
+        return target;
+    }
+
+    // Target planet of the ship without reconsidering it
+    private Planet currentTarget(Ship ship) {
+        final int planetId = targets.get(ship.getId());
+        return planetId == -1 ? null : gameMap.getPlanet(planetId);
+    }
+
+    // Keep the proposed move if it is still clear, otherwise plan again around the moves accepted so far
+    private Move resolve(ShipOrder order) {
+        final Move proposal = order.proposal;
+        if (proposal instanceof ThrustMove) {
+            final ThrustMove thrust = (ThrustMove) proposal;
+            if (!planner.isClear(order.ship, thrust.getThrust(), thrust.getAngle())) {
+                return planMove(order, planner);
             }
+        }
+        return proposal;
+    }
 
-            if (target.isOwned()) {
-                if (target.getOwner() == gameMap.getMyPlayerId()) {
-                    // Target is ours
-                    if (target.isFull()) target = (Planet) decideTarget(ship);
-                } else if (ourPlanets.size() < OFFENSE_THRESHOLD) {
-                    // Target is opponent's and we don't have enough planets
-                    target = (Planet) decideTarget(ship);
-                }
+    /**
+     * Plan the ship's move. Only writes to the order, so it can run for several ships at once.
+     * @param planner reservations to avoid, or null to plan against the start-of-turn positions
+     */
+    private Move planMove(ShipOrder order, MovePlanner planner) {
+        final Ship ship = order.ship;
+        if (ship.getId() == destroyer) {
+            return getDestroyerMove(order, planner);
+        }
+        if (order.enemy != null) {
+            ThrustMove move = approachEnemyShip(order, order.enemy, planner);
+            if (move != null) return move;
+            order.planet = chooseTarget(ship);
+        }
+        final Planet target = order.planet;
+        if (target == null) return null;
+
+        // Target planet is nearby
+        if (ship.isCloserThan(target, target.getRadius() + Constants.DOCK_RADIUS * 4)) {
+            // if planet is opponent's
+            if (target.isOwned() && target.getOwner() != gameMap.getMyPlayerId()) {
+                final Move enemyMove = approachEnemy(order, target, planner);
+                if (enemyMove == null) Log.log(Log.Level.WARN, "INVALID APPROACH MOVE");
+                return enemyMove;
             }
+            // Planet is ours or undocked
+            if (ship.canDock(target)) {
+                return new DockMove(ship, target);
+            }
+            return Navigation.navigateShipToDock(
+                    gameMap, planner, ship, target, Constants.MAX_SPEED - 1
+            );
+        }
 
-            // Target planet is nearby
-            if (ship.getDistanceTo(target) < (target.getRadius() + Constants.DOCK_RADIUS * 4)) {
-                // if planet is opponent's
-                if (target.isOwned() && target.getOwner() != gameMap.getMyPlayerId()) {
-                    final Move enemyMove = approachEnemy(ship, target);
-                    if (enemyMove != null) moveList.add(enemyMove);
-                    else Log.log("INVALID APPROACH MOVE");
-                } else {
-                    // Planet is ours or undocked
-                    if (ship.canDock(target)) {
-                        moveList.add(new DockMove(ship, target));
-                    } else {
-                        ThrustMove approachPlanet = Navigation.navigateShipToDock(
-                                gameMap, ship, target, Constants.MAX_SPEED - 1
-                        );
-                        if (approachPlanet != null) moveList.add(approachPlanet);
-                    }
-                }
-            } else {
-                // Move to target
-                ThrustMove moveToTarget;
-                int speed = (turnCount < 4) ? Constants.MAX_SPEED - 2 : Constants.MAX_SPEED;
-                ArrayList<Entity> inBetween = new ArrayList<>();
-                GameMap.addEntitiesBetween(inBetween, ship, target, gameMap.getAllPlanets().values());
-                // Check for docked ships
-                List<Ship> dockedShips = gameMap.getMyPlayer().getShips().values().stream()
-                        .filter(s -> s.getDockingStatus() != Ship.DockingStatus.Undocked)
-                        .collect(Collectors.toList());
-                GameMap.addEntitiesBetween(inBetween, ship, target, dockedShips);
-                if (inBetween.isEmpty() && turnCount > 8) {
-                    moveToTarget = new ThrustMove(ship, ship.orientTowardsInDeg(target), speed);
-                } else {
-                    moveToTarget = Navigation.navigateShipTowardsTarget(
-                            gameMap, ship, new Position(target.getXPos(), target.getYPos()),
-                            speed, true, NAV_NUM_CORRECTIONS,
-                            Math.toRadians(5)
-                    );
-                }
-                if (moveToTarget != null) moveList.add(moveToTarget);
+        // Move to target
+        final int speed = Constants.MAX_SPEED;
+        final int direct = ship.orientTowardsInDeg(target);
+        // Check for planets and docked ships, then for ships already moved this turn
+        if (!gameMap.hasStaticObstacleBetween(ship, target)
+                && (planner == null || planner.isClear(ship, speed, direct))) {
+            return new ThrustMove(ship, direct, speed);
+        }
+        final Position waypoint = routeWaypoint(ship, target);
+        if (waypoint != null) {
+            final ThrustMove move = Navigation.navigateShipTowardsTarget(gameMap, planner, ship, waypoint,
+                    speed, true, NAV_NUM_CORRECTIONS, Math.toRadians(5));
+            if (move != null) return move;
+        }
+        return Navigation.navigateShipTowardsTarget(
+                gameMap, planner, ship, new Position(target.getXPos(), target.getYPos()),
+                speed, true, NAV_NUM_CORRECTIONS,
+                Math.toRadians(5)
+        );
+    }
+
+    /**
+     * Next waypoint of the ship's route around planets to the target planet, kept across turns
+     * while the target stays the same.
+     * @return null if the target is near, in sight past planets, or cannot be reached
+     */
+    private Position routeWaypoint(Ship ship, Planet target) {
+        if (ship.getDistanceTo(target) - target.getRadius() < ROUTE_MIN_DISTANCE) return null;
+        final double reuseRadius = target.getRadius() + Constants.MIN_DISTANCE_FOR_CLOSEST_POINT + 1;
+        Router.Route route = routes.get(ship.getId());
+        Position waypoint = null;
+        if (route != null
+                && FastMath.isWithin(route.getGoalX(), route.getGoalY(), target.getXPos(), target.getYPos(), reuseRadius)) {
+            waypoint = router.nextWaypoint(route, ship.getXPos(), ship.getYPos());
+        }
+        if (waypoint == null) {
+            final Position goal = ship.getClosestPoint(target);
+            route = router.findRoute(ship.getXPos(), ship.getYPos(), goal.getXPos(), goal.getYPos());
+            if (route == null) {
+                routes.remove(ship.getId());
+                return null;
             }
+            routes.put(ship.getId(), route);
+            waypoint = router.nextWaypoint(route, ship.getXPos(), ship.getYPos());
+        }
+        return waypoint == null || route.getRemaining() == 0 ? null : waypoint;
+    }
+
+    // Cheap move for ships planned after the navigation budget ran out: straight towards the target, if clear
+    private Move defaultMove(ShipOrder order) {
+        final Ship ship = order.ship;
+        final Planet target = order.planet;
+        if (target == null) return null;
+        if (ship.canDock(target) && !target.isFull()
+                && (!target.isOwned() || target.getOwner() == gameMap.getMyPlayerId())) {
+            return new DockMove(ship, target);
         }
+        final Position closest = planetTable.closestDockPoint(target.getId(), ship.getXPos(), ship.getYPos());
+        final int thrust = (int) Math.min(Constants.MAX_SPEED, ship.getDistanceTo(closest));
+        final int direct = ship.orientTowardsInDeg(closest);
+        if (gameMap.hasStaticObstacleBetween(ship, closest) || !planner.isClear(ship, thrust, direct)) {
+            return null;
+        }
+        return new ThrustMove(ship, direct, thrust);
+    }
 
-        if (targets.size() > gameMap.getMyPlayer().getShips().size() * 2)
-            clean();
-        turnCount++;
-        return moveList;
+    // Add move to this turn's moves and reserve its path
+    private void accept(ArrayList<Move> moveList, Move move) {
+        moveList.add(move);
+        planner.commit(move);
     }
 
-    private ThrustMove getDestroyerMove(Ship ship) {
-        final ArrayList<Ship> targets = gameMap.getAllShips().stream()
-                .filter(s -> s.getOwner() != ship.getOwner() &&
-                        (turnCount < 20 || s.getDockingStatus() != Ship.DockingStatus.Undocked))
-                .collect(Collectors.toCollection(ArrayList::new));
-        if (targets.isEmpty()) {
-            destroyer = -1;
-            decideTarget(ship);
+    private ThrustMove getDestroyerMove(ShipOrder order, MovePlanner planner) {
+        final Ship ship = order.ship;
+        final WorldState world = gameMap.getWorld();
+        final int nearest = gameMap.getShipIndex().nearest(ship.getXPos(), ship.getYPos(), Double.POSITIVE_INFINITY,
+                slot -> world.getShipOwner(slot) != ship.getOwner()
+                        && (turnCount < 20 || !world.isShipUndocked(slot)));
+        if (nearest == -1) {
+            order.dropDestroyer = true;
+            order.planet = decideTarget(ship);
             return null;
         }
-        targets.sort(Comparator.comparingDouble(s -> s.getDistanceTo(ship)));
-        final Ship target = targets.get(0);
-        if (ship.getDistanceTo(target) < Constants.WEAPON_RADIUS) return null;
-        final int speed = ship.getDistanceTo(target) > 8 ? Constants.MAX_SPEED : Constants.MAX_SPEED / 2;
-        return Navigation.navigateShipTowardsTarget(gameMap, ship, target, speed,
+        final Ship target = world.getShip(nearest);
+        if (ship.isCloserThan(target, Constants.WEAPON_RADIUS)) return null;
+        // Hold off while the target is defended well enough to destroy us
+        if (losesFight(order, target)) return retreatFrom(ship, target, planner);
+        final int speed = ship.isWithin(target, 8) ? Constants.MAX_SPEED / 2 : Constants.MAX_SPEED;
+        return Navigation.navigateShipTowardsTarget(gameMap, planner, ship, chase(ship, target, speed), speed,
                 true, NAV_NUM_CORRECTIONS, Math.toRadians(5));
 
     }
 
-    private ThrustMove approachEnemyShip(Ship ship, Ship enemyShip) {
-        return Navigation.navigateShipTowardsTarget(gameMap, ship, enemyShip,
+    // null if the ship would not survive the fight; it then falls back to a planet
+    private ThrustMove approachEnemyShip(ShipOrder order, Ship enemyShip, MovePlanner planner) {
+        final Ship ship = order.ship;
+        if (losesFight(order, enemyShip)) return null;
+        return Navigation.navigateShipTowardsTarget(gameMap, planner, ship,
+                chase(ship, enemyShip, Constants.MAX_SPEED - 1),
                 Constants.MAX_SPEED - 1, true, NAV_NUM_CORRECTIONS,
                 Math.toRadians(5));
     }
@@ -230,110 +540,162 @@ public class GameBot {
      * Assign ships to target enemy ships near our planets
      */
     private void assignDefence() {
-        grid.update(gameMap);
-        for (final Ship threat : Defence.getThreats(ourPlanets, grid)) {
+        final WorldState world = gameMap.getWorld();
+        final int myId = gameMap.getMyPlayerId();
+        // Most dangerous first, so that they get defenders if time runs out
+        final ArrayList<Ship> threats = Defence.getThreats(ourPlanets, gameMap, motion, THREAT_LOOKAHEAD);
+        threats.sort(Comparator.comparingDouble(
+                (Ship threat) -> -influence.getEnemy(threat.getXPos(), threat.getYPos())));
+        for (final Ship threat : threats) {
+            if (scheduler.expired()) break;
             // Assign nearest ship to target the threat
-            ArrayList<Ship> ships = new ArrayList<>(gameMap.getMyPlayer().getShips().values());
-            ships.removeIf(ship ->
-                    ship.getDockingStatus() != Ship.DockingStatus.Undocked
-                            || ship.getDistanceTo(threat) > 30
-                            || shipTargets.containsKey(ship.getId())
-            );
-            ships.sort(Comparator.comparingDouble(ship -> ship.getDistanceTo(threat)));
-            if (!ships.isEmpty()) {
-                final Ship assignee = ships.get(0);
-                shipTargets.put(assignee.getId(), threat);
+            final int nearest = gameMap.getShipIndex().nearest(threat.getXPos(), threat.getYPos(), 30,
+                    slot -> world.getShipOwner(slot) == myId
+                            && world.isShipUndocked(slot)
+                            && !shipTargets.containsKey(world.getShipId(slot)));
+            if (nearest != -1) {
+                shipTargets.put(world.getShipId(nearest), threat);
             }
         }
     }
 
-    // (re)calculate which planet the ship should target
-    private Entity decideTarget(Ship ship) {
-        // Nearest unowned planet
-        ArrayList<Planet> planets = getPlanetsByDistance(ship);
-
-        ArrayList<Planet> unowned = new ArrayList<>(planets);
-        unowned.removeIf(Planet::isOwned);
-        if (unowned.size() > 1 && Math.random() < 0.4) {
-            targets.put(ship.getId(), unowned.get(0).getId());
-        }
-        for (final Planet planet : planets) {
+    // (re)calculate which planet the ship should target; null if there are no planets
+    private Planet decideTarget(Ship ship) {
+        final double x = ship.getXPos(), y = ship.getYPos();
+        final boolean expand = ourPlanets.size() < OFFENSE_THRESHOLD &&
+                ((double) numOwnedPlanets / gameMap.getAllPlanets().size()) < 0.6;
+        // Nearest planet that is worth going for
+        int planetId = planetTable.nearest(x, y, id -> {
+            final Planet planet = gameMap.getPlanet(id);
             if (planet.getOwner() == gameMap.getMyPlayerId()) {
                 if (planet.isFull())
-                    continue; // skip if is our planet and full
-                else if (planet.getDockedShips().size() > 1 && Math.random() > 0.3)
-                    continue; // skip sometimes if 2+ ships on planet
+                    return false; // skip if is our planet and full
+                else if (planet.getDockedCount() > 1 && random(ship, 1 + id) > 0.3)
+                    return false; // skip sometimes if 2+ ships on planet
+            }
+            // skip if enemy planet and we don't own enough planets
+            return !(planet.isOwned() && expand);
+        });
+        if (planetId == -1) {
+            // No remaining planets: nearest unowned planet, sometimes, or else nearest planet
+            final int unowned = gameMap.getAllPlanets().size() - numOwnedPlanets;
+            if (unowned > 1 && random(ship, 0) < 0.4) {
+                planetId = planetTable.nearest(x, y, id -> !gameMap.getPlanet(id).isOwned());
+            } else {
+                planetId = planetTable.nearest(x, y, null);
             }
-            if (planet.isOwned() && ourPlanets.size() < OFFENSE_THRESHOLD &&
-                    ((double) numOwnedPlanets / gameMap.getAllPlanets().size()) < 0.6)
-                continue; // skip if enemy planet and we don't own enough planets
-            // Designate as target
-            targets.put(ship.getId(), planet.getId());
-            return planet;
-        }
-        // No remaining planets
-        return planets.get(0);
+        }
+        return planetId == -1 ? null : gameMap.getPlanet(planetId);
+    }
+
+    /**
+     * Random number in [0, 1) that depends only on the seed, the turn, the ship and the salt,
+     * so that decisions do not depend on the order or thread ships are planned in.
+     */
+    private double random(Ship ship, int salt) {
+        long h = seed + turnCount * 0x9E3779B97F4A7C15L + ((long) ship.getId() << 20) + salt;
+        // SplitMix64 finaliser
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h = h ^ (h >>> 31);
+        return (h >>> 11) * 0x1.0p-53;
     }
 
     // Decide action when within close range of enemy planet
-    private Move approachEnemy(Ship myShip, Planet enemy) {
+    private Move approachEnemy(ShipOrder order, Planet enemy, MovePlanner planner) {
+        final Ship myShip = order.ship;
         // Charge at planet to damage
         // TODO Destroy opponent's ships
-        for (final int enemyShipId : enemy.getDockedShips()) {
-            final Ship enemyShip = gameMap.getShip(enemy.getOwner(), enemyShipId);
+        for (int i = 0; i < enemy.getDockedCount(); ++i) {
+            final Ship enemyShip = gameMap.getShip(enemy.getOwner(), enemy.getDockedShip(i));
             // within range to attack enemy ship; keep attacking
-            if (myShip.getDistanceTo(enemyShip) < Constants.WEAPON_RADIUS) {
+            if (myShip.isCloserThan(enemyShip, Constants.WEAPON_RADIUS)) {
                 final int direction = myShip.orientTowardsInDeg(enemyShip);
                 return new ThrustMove(myShip, direction, 0);
             }
         }
 //        if (incoming.containsKey(enemy)
-//                && incoming.get(enemy) >= enemy.getDockedShips().size()) {
+//                && incoming.get(enemy) >= enemy.getDockedCount()) {
         // Destroy enemy ships
         Ship lastShip = null;
         // Find enemy ship to destroy
-        for (final Ship enemyShip : enemy.getDockedShips()
-                .stream().map(id -> gameMap.getShip(enemy.getOwner(), id)).collect(Collectors.toList())) {
+        for (int i = 0; i < enemy.getDockedCount(); ++i) {
+            final Ship enemyShip = gameMap.getShip(enemy.getOwner(), enemy.getDockedShip(i));
+            // Wait for reinforcements rather than fly into defenders that outgun us
+            if (lastShip == null && losesFight(order, enemyShip)) return retreatFrom(myShip, enemyShip, planner);
             lastShip = enemyShip;
             if (!Collision.segmentCircleIntersect(myShip, enemyShip, enemy, Constants.FORECAST_FUDGE_FACTOR)) {
                 // Go directly to target
-                return Navigation.navigateShipTowardsTarget(gameMap, myShip, enemyShip,
+                return Navigation.navigateShipTowardsTarget(gameMap, planner, myShip, enemyShip,
                         Constants.MAX_SPEED - 2, true, 5, Math.toRadians(7) );
             }
         }
         // Circle around ship$
-        return Navigation.navigateShipTowardsTarget(gameMap, myShip, lastShip, Constants.MAX_SPEED - 1,
+        return Navigation.navigateShipTowardsTarget(gameMap, planner, myShip, lastShip, Constants.MAX_SPEED - 1,
                 true, NAV_NUM_CORRECTIONS, Math.toRadians(5));
 //        int circleAngle = Math.floorMod(myShip.orientTowardsInDeg(enemy) + 90, 360);
 
 //        return new ThrustMove(myShip, circleAngle, Constants.MAX_SPEED - 1);
     }
 
+    /**
+     * Simulate the fight around the target with the order's ship joining it.
+     * @return true if all of our ships in the fight are expected to be destroyed while enemies survive
+     */
+    private boolean losesFight(ShipOrder order, Position target) {
+        if (order.fightX == target.getXPos() && order.fightY == target.getYPos()) return order.fightLost;
+        // Only undocked enemies can destroy us, and none are within the fight's reach
+        if (influence.getEnemy(target.getXPos(), target.getYPos()) <= 0) return false;
+        final Ship ship = order.ship;
+        final Combat combat = combats.get();
+        final WorldState world = gameMap.getWorld();
+        combat.clear();
+        combat.addShips(world, gameMap.getShipIndex(), target.getXPos(), target.getYPos(), ENGAGE_RADIUS);
+        combat.addShip(world, world.getShipSlot(ship.getOwner(), ship.getId()));
+        combat.simulate(COMBAT_TURNS);
+        order.fightX = target.getXPos();
+        order.fightY = target.getYPos();
+        order.fightLost = combat.isLost(ship.getOwner());
+        return order.fightLost;
+    }
+
+    /**
+     * Where to head for to catch the enemy ship: the ship itself if it is at rest, otherwise
+     * where it can be intercepted at the given speed, or failing that where it will be next turn.
+     */
+    private Position chase(Ship ship, Ship enemy, int speed) {
+        if (motion.getSpeed(enemy.getOwner(), enemy.getId()) == 0) return enemy;
+        Position aim = motion.intercept(enemy, ship.getXPos(), ship.getYPos(), speed);
+        if (aim == null) aim = motion.predict(enemy, 1);
+        return new Position(Math.max(0, Math.min(gameMap.getWidth(), aim.getXPos())),
+                Math.max(0, Math.min(gameMap.getHeight(), aim.getYPos())));
+    }
+
+    // Move straight away from the threat at full speed, staying on the map
+    private ThrustMove retreatFrom(Ship ship, Position threat, MovePlanner planner) {
+        final double angle = threat.orientTowardsInRad(ship);
+        final double x = Math.max(1, Math.min(gameMap.getWidth() - 1,
+                ship.getXPos() + Constants.MAX_SPEED * Math.cos(angle)));
+        final double y = Math.max(1, Math.min(gameMap.getHeight() - 1,
+                ship.getYPos() + Constants.MAX_SPEED * Math.sin(angle)));
+        return Navigation.navigateShipTowardsTarget(gameMap, planner, ship, new Position(x, y),
+                Constants.MAX_SPEED, true, NAV_NUM_CORRECTIONS, Math.toRadians(5));
+    }
+
     private ArrayList<Entity> entitiesInBetween(Entity from, Entity to, Collection<? extends Entity> entities) {
         ArrayList<Entity> result = new ArrayList<>();
         GameMap.addEntitiesBetween(result, from, to, entities);
         return result;
     }
 
-    // Clean up unused mappings
-    private void clean() {
-        final HashSet<Integer> idCheck = new HashSet<>();
-        idCheck.addAll(targets.keySet());
-        idCheck.addAll(shipTargets.keySet());
-        for (int id : idCheck) {
-            if (!gameMap.getMyPlayer().getShips().keySet().contains(id)) {
-                // Ship no longer exists
-                targets.remove(id);
-                shipTargets.remove(id);
-            }
-        }
-    }
-
     public void logIncoming() {
-        if (incoming == null) return;
-        for (final Planet planet : incoming.keySet()) {
-            Log.log(String.format("Planet id %d, Owner %d, Incoming %d",
-                    planet.getId(), planet.getOwner(), incoming.get(planet)));
+        if (!Log.isEnabled(Log.Level.INFO)) return;
+        for (int planetId = 0; planetId < incoming.length; ++planetId) {
+            final Planet planet = gameMap.getPlanet(planetId);
+            if (incoming[planetId] == 0 || planet == null) continue;
+            final int count = incoming[planetId];
+            Log.log(Log.Level.INFO, () -> String.format("Planet id %d, Owner %d, Incoming %d",
+                    planet.getId(), planet.getOwner(), count));
         }
     }
 }
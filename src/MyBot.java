@@ -1,14 +1,32 @@
 import hlt.*;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
 public class MyBot {
 
-    public static void main(final String[] args) {
+    /**
+     * Usage: MyBot [--record file] [--parallel]
+     * --parallel plans ships on several threads; off by default until it is shown to pay off
+     * under the engine's CPU limits.
+     */
+    public static void main(final String[] args) throws IOException {
+        final long seed = System.nanoTime();
         final Networking networking = new Networking();
+        boolean parallel = false;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--record") && i + 1 < args.length) {
+                // Replay with: java Replay file
+                Networking.record(new FileOutputStream(args[++i]), seed);
+            } else if (args[i].equals("--parallel")) {
+                parallel = true;
+            }
+        }
         final GameMap gameMap = networking.initialize("Helium-4e");
         // Init game
-        final GameBot bot = new GameBot(gameMap);
+        final GameBot bot = new GameBot(gameMap, networking.getScheduler(), seed);
+        bot.setParallel(parallel);
 
         while (true) {
             // make each move of the game
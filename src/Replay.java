@@ -0,0 +1,102 @@
+import hlt.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Replays a game recorded with {@code MyBot --record file}: feeds the recorded frames to a
+ * GameBot seeded as in the game, turn by turn, and checks that it sends the same commands.
+ * Prints the turns whose commands differ and the recorded and replayed turn times.
+ *
+ * Usage: Replay file [repeat]
+ * With repeat > 1 the game is replayed that many times, e.g. to profile it.
+ */
+public class Replay {
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: Replay file [repeat]");
+            System.exit(2);
+        }
+        final int repeat = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int mismatches = 0;
+        for (int i = 0; i < repeat; ++i) {
+            try (FileInputStream in = new FileInputStream(args[0])) {
+                mismatches += replay(new Recording(in), i == 0);
+            }
+        }
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return number of turns whose commands differ from the recording
+     */
+    private static int replay(final Recording recording, final boolean report) throws IOException {
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        final MoveEncoder encoder = new MoveEncoder(Channels.newChannel(sent));
+
+        // Initialisation: our id, the map size, then the first frame
+        final int myId = nextFrame(recording).nextInt();
+        final FrameReader size = nextFrame(recording);
+        final int width = size.nextInt();
+        final int height = size.nextInt();
+        final GameMap gameMap = new GameMap(width, height, myId);
+        gameMap.updateMap(nextFrame(recording));
+        final TurnScheduler scheduler = new TurnScheduler();
+        final GameBot bot = new GameBot(gameMap, scheduler, recording.getSeed());
+
+        int turn = 0;
+        int mismatches = 0;
+        long recordedNanos = 0, replayedNanos = 0, recordedMax = 0, replayedMax = 0;
+        while (recording.next() == Recording.FRAME) {
+            final FrameReader frame = reader(recording);
+            final long start = System.nanoTime();
+            scheduler.startTurn();
+            gameMap.updateMap(frame);
+            final ArrayList<Move> moves = bot.makeMove();
+            encoder.write(moves);
+            final long elapsed = System.nanoTime() - start;
+
+            if (recording.next() != Recording.MOVES) break;
+            if (!Arrays.equals(Arrays.copyOf(recording.getBytes(), recording.getLength()),
+                    Arrays.copyOf(encoder.getLineBytes(), encoder.getLineLength()))) {
+                ++mismatches;
+                if (report) {
+                    System.out.println("turn " + turn + " differs");
+                    System.out.println("  recorded: " + new String(recording.getBytes(), 0, recording.getLength(), "US-ASCII"));
+                    System.out.println("  replayed: " + new String(encoder.getLineBytes(), 0, encoder.getLineLength(), "US-ASCII"));
+                }
+            }
+            encoder.clear();
+            recordedNanos += recording.getElapsedNanos();
+            recordedMax = Math.max(recordedMax, recording.getElapsedNanos());
+            replayedNanos += elapsed;
+            replayedMax = Math.max(replayedMax, elapsed);
+            ++turn;
+        }
+
+        if (report) {
+            System.out.printf("%d turns, %d differ%n", turn, mismatches);
+            System.out.printf("recorded: mean %.2fms, max %.2fms%n", recordedNanos / 1e6 / Math.max(1, turn), recordedMax / 1e6);
+            System.out.printf("replayed: mean %.2fms, max %.2fms%n", replayedNanos / 1e6 / Math.max(1, turn), replayedMax / 1e6);
+        }
+        return mismatches;
+    }
+
+    private static FrameReader nextFrame(final Recording recording) throws IOException {
+        if (recording.next() != Recording.FRAME) throw new IOException("Recording ends before the game starts");
+        return reader(recording);
+    }
+
+    private static FrameReader reader(final Recording recording) throws IOException {
+        final FrameReader reader = new FrameReader(
+                new ByteArrayInputStream(recording.getBytes(), 0, recording.getLength()));
+        reader.nextLine();
+        return reader;
+    }
+}
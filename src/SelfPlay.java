@@ -0,0 +1,75 @@
+import hlt.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays GameBot against itself in the local simulator.
+ *
+ * Usage: SelfPlay [games] [players] [seed]
+ */
+public class SelfPlay {
+
+    public static void main(final String[] args) {
+        final int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final int players = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        final long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        final int[] wins = new int[players];
+        final long start = System.nanoTime();
+        int turns = 0;
+        for (int game = 0; game < games; ++game) {
+            final long gameSeed = seed + game;
+            final Simulator simulator = play(players, gameSeed);
+            turns += simulator.getTurn();
+            ++wins[simulator.getLeader()];
+
+            final StringBuilder line = new StringBuilder();
+            line.append("game ").append(game).append(" seed ").append(gameSeed)
+                    .append(" turns ").append(simulator.getTurn()).append(" ships");
+            for (int player = 0; player < players; ++player) {
+                line.append(' ').append(simulator.getShipCount(player));
+            }
+            line.append(" leader ").append(simulator.getLeader());
+            System.out.println(line);
+        }
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final StringBuilder line = new StringBuilder("wins");
+        for (int player = 0; player < players; ++player) line.append(' ').append(wins[player]);
+        System.out.println(line);
+        System.out.printf("%d games, %d turns in %.1fs (%.0f turns/s)%n", games, turns, seconds, turns / seconds);
+    }
+
+    /**
+     * Play one game to the end, each player's bot seeded from the game seed.
+     */
+    static Simulator play(final int players, final long seed) {
+        final Simulator simulator = new Simulator(players, 240, 160, seed);
+        final GameMap[] maps = new GameMap[players];
+        final TurnScheduler[] schedulers = new TurnScheduler[players];
+        final GameBot[] bots = new GameBot[players];
+        for (int player = 0; player < players; ++player) {
+            maps[player] = new GameMap(simulator.getWidth(), simulator.getHeight(), player);
+            maps[player].updateMap(simulator.frame());
+            schedulers[player] = new TurnScheduler();
+            bots[player] = new GameBot(maps[player], schedulers[player], seed * 31 + player);
+        }
+
+        final List<List<Move>> moves = new ArrayList<>();
+        while (!simulator.isOver()) {
+            moves.clear();
+            for (int player = 0; player < players; ++player) {
+                if (simulator.getShipCount(player) == 0) {
+                    moves.add(null);
+                    continue;
+                }
+                maps[player].updateMap(simulator.frame());
+                schedulers[player].startTurn();
+                moves.add(bots[player].makeMove());
+            }
+            simulator.step(moves);
+        }
+        return simulator;
+    }
+}
@@ -0,0 +1,293 @@
+package hlt;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Assignment of persons (e.g. ships) to objects with a capacity (e.g. planets with docking
+ * spots) maximising the total value, solved with a forward auction.
+ *
+ * Each person has a sparse list of candidate objects and values; an object with capacity c has
+ * c slots, each with its own price. Unassigned persons bid for the cheapest slot of the object
+ * with the best value net of price, raising that slot's price by the margin over their second
+ * best option plus epsilon and evicting its holder. Not being assigned is always an option of
+ * value zero, so persons whose candidates all become too expensive drop out and the auction
+ * ends. The result is within {@code epsilon} per person of an optimal assignment.
+ *
+ * The auction is warm started between rounds: a person keeps the object it held last round, at
+ * last round's price, if that is still within {@link #WARM_TOLERANCE} of its best option, so a
+ * round in which little has changed takes only a few bids.
+ */
+public class Auction {
+
+    /** Bid increment; assignments are optimal to within this much value per person */
+    public static final double EPSILON = 0.05;
+    /**
+     * A person keeps last round's object if it is worth at most this much less than its best
+     * option; damps churn between rounds, at the cost of optimality for those persons
+     */
+    public static final double WARM_TOLERANCE = 1.0;
+    // How often the auction polls for running out of time, in bids
+    private static final int POLL_INTERVAL = 64;
+
+    // Per object: capacity this round, price paid for it last round, first slot
+    private int[] capacity = new int[0];
+    private double[] basePrice = new double[0];
+    private int[] slotStart = new int[0];
+    // Per slot: object, price and holding person, -1 if free
+    private int[] slotObject = new int[64];
+    private double[] slotPrice = new double[64];
+    private int[] slotHolder = new int[64];
+
+    // Per person: candidates are candidateObjects/Values[candidateStart[p], candidateStart[p + 1])
+    private int persons;
+    private int candidates;
+    private int[] candidateStart = new int[65];
+    private int[] candidateObjects = new int[256];
+    private double[] candidateValues = new double[256];
+    private int[] previous = new int[64];
+    private int[] assigned = new int[64];
+    // slot held by each person, -1 if none
+    private int[] held = new int[64];
+    private int[] queue = new int[64];
+
+    private int bids;
+
+    /**
+     * Start a new round over objects {@code 0 .. objectCount - 1}, all with zero capacity.
+     */
+    public void begin(final int objectCount) {
+        if (capacity.length < objectCount) {
+            capacity = new int[objectCount];
+            basePrice = Arrays.copyOf(basePrice, objectCount);
+            slotStart = new int[objectCount + 1];
+        }
+        Arrays.fill(capacity, 0);
+        persons = 0;
+        candidates = 0;
+        candidateStart[0] = 0;
+    }
+
+    public void setCapacity(final int object, final int slots) {
+        capacity[object] = Math.max(0, slots);
+    }
+
+    /**
+     * Add a person to this round.
+     * @param previousObject the object the person held last round, or -1
+     * @return the person's index
+     */
+    public int addPerson(final int previousObject) {
+        if (persons + 1 == candidateStart.length) {
+            final int size = candidateStart.length * 2;
+            candidateStart = Arrays.copyOf(candidateStart, size);
+            previous = Arrays.copyOf(previous, size);
+            assigned = Arrays.copyOf(assigned, size);
+            held = Arrays.copyOf(held, size);
+            queue = Arrays.copyOf(queue, size);
+        }
+        previous[persons] = previousObject;
+        candidateStart[++persons] = candidates;
+        return persons - 1;
+    }
+
+    /**
+     * Add a candidate object for the person added last. Only positive values are worth more
+     * than staying unassigned.
+     */
+    public void addCandidate(final int object, final double value) {
+        if (candidates == candidateObjects.length) {
+            candidateObjects = Arrays.copyOf(candidateObjects, candidates * 2);
+            candidateValues = Arrays.copyOf(candidateValues, candidates * 2);
+        }
+        candidateObjects[candidates] = object;
+        candidateValues[candidates] = value;
+        candidateStart[persons] = ++candidates;
+    }
+
+    /**
+     * Run the auction until every person is assigned or has dropped out, or until out of time.
+     * @param expired polled every few bids; persons still bidding when it turns true are left unassigned
+     * @return true if the auction completed
+     */
+    public boolean solve(final BooleanSupplier expired) {
+        layoutSlots();
+        Arrays.fill(assigned, 0, persons, -1);
+        Arrays.fill(held, 0, persons, -1);
+
+        // Warm start: persons keep last round's object at last round's price, as long as it is
+        // still within WARM_TOLERANCE of their best option. Free slots start at price zero, which the auction
+        // needs to be optimal; releasing a slot returns it to zero, which can in turn make
+        // another object the better option for someone else, so repeat until stable
+        for (int p = 0; p < persons; ++p) {
+            final int object = previous[p];
+            final int slot = object == -1 || !isCandidate(p, object) ? -1 : freeSlot(object);
+            if (slot != -1) {
+                take(p, slot);
+                slotPrice[slot] = basePrice[object];
+            }
+        }
+        int queued = 0;
+        for (int p = 0; p < persons; ++p) {
+            if (held[p] == -1) queue[queued++] = p;
+        }
+        boolean released = true;
+        while (released) {
+            released = false;
+            for (int p = 0; p < persons; ++p) {
+                final int slot = held[p];
+                if (slot == -1) continue;
+                if (value(p, assigned[p]) - slotPrice[slot] < bestNetValue(p) - WARM_TOLERANCE) {
+                    slotHolder[slot] = -1;
+                    slotPrice[slot] = 0;
+                    assigned[p] = -1;
+                    held[p] = -1;
+                    queue[queued++] = p;
+                    released = true;
+                }
+            }
+        }
+
+        // Bidding; the queue is circular since every person is in it at most once
+        int head = 0;
+        int size = queued;
+        bids = 0;
+        boolean complete = true;
+        while (size > 0) {
+            if (++bids % POLL_INTERVAL == 0 && expired.getAsBoolean()) {
+                complete = false;
+                break;
+            }
+            final int p = queue[head];
+            head = (head + 1) % persons;
+            --size;
+
+            int bestObject = -1;
+            double bestValue = 0;
+            double best = 0;
+            double second = 0;
+            for (int c = candidateStart[p]; c < candidateStart[p + 1]; ++c) {
+                final int object = candidateObjects[c];
+                if (capacity[object] == 0) continue;
+                final double net = candidateValues[c] - slotPrice[cheapestSlot(object)];
+                if (net > best) {
+                    second = best;
+                    best = net;
+                    bestObject = object;
+                    bestValue = candidateValues[c];
+                } else if (net > second) {
+                    second = net;
+                }
+            }
+            // Every option costs more than it is worth: stay unassigned
+            if (bestObject == -1) continue;
+
+            final int slot = cheapestSlot(bestObject);
+            // The object's next cheapest slot is also an alternative
+            for (int s = slotStart[bestObject]; s < slotStart[bestObject + 1]; ++s) {
+                if (s != slot) second = Math.max(second, bestValue - slotPrice[s]);
+            }
+            final int evicted = slotHolder[slot];
+            slotPrice[slot] += best - second + EPSILON;
+            take(p, slot);
+            if (evicted != -1) {
+                assigned[evicted] = -1;
+                held[evicted] = -1;
+                queue[(head + size) % persons] = evicted;
+                ++size;
+            }
+        }
+
+        // Carry the lowest price paid for each object over to the next round
+        for (int object = 0; object < capacity.length; ++object) {
+            double price = Double.POSITIVE_INFINITY;
+            for (int slot = slotStart[object]; slot < slotStart[object + 1]; ++slot) {
+                if (slotHolder[slot] != -1) price = Math.min(price, slotPrice[slot]);
+            }
+            basePrice[object] = price == Double.POSITIVE_INFINITY ? 0 : price;
+        }
+        return complete;
+    }
+
+    /**
+     * @return the object assigned to the person, or -1 if it is unassigned
+     */
+    public int getAssigned(final int person) {
+        return assigned[person];
+    }
+
+    public int getPersonCount() {
+        return persons;
+    }
+
+    /** Number of bids made in the last round */
+    public int getBids() {
+        return bids;
+    }
+
+    private void layoutSlots() {
+        int slots = 0;
+        for (int object = 0; object < capacity.length; ++object) {
+            slotStart[object] = slots;
+            slots += capacity[object];
+        }
+        slotStart[capacity.length] = slots;
+        if (slotPrice.length < slots) {
+            slotPrice = new double[Math.max(slots, slotPrice.length * 2)];
+            slotHolder = new int[slotPrice.length];
+            slotObject = new int[slotPrice.length];
+        }
+        for (int object = 0; object < capacity.length; ++object) {
+            Arrays.fill(slotObject, slotStart[object], slotStart[object + 1], object);
+        }
+        Arrays.fill(slotPrice, 0, slots, 0);
+        Arrays.fill(slotHolder, 0, slots, -1);
+    }
+
+    private void take(final int person, final int slot) {
+        slotHolder[slot] = person;
+        held[person] = slot;
+        assigned[person] = slotObject[slot];
+    }
+
+    private int cheapestSlot(final int object) {
+        int cheapest = slotStart[object];
+        for (int s = cheapest + 1; s < slotStart[object + 1]; ++s) {
+            if (slotPrice[s] < slotPrice[cheapest]) cheapest = s;
+        }
+        return cheapest;
+    }
+
+    private int freeSlot(final int object) {
+        if (object >= capacity.length) return -1;
+        for (int s = slotStart[object]; s < slotStart[object + 1]; ++s) {
+            if (slotHolder[s] == -1) return s;
+        }
+        return -1;
+    }
+
+    private boolean isCandidate(final int person, final int object) {
+        for (int c = candidateStart[person]; c < candidateStart[person + 1]; ++c) {
+            if (candidateObjects[c] == object) return true;
+        }
+        return false;
+    }
+
+    private double value(final int person, final int object) {
+        for (int c = candidateStart[person]; c < candidateStart[person + 1]; ++c) {
+            if (candidateObjects[c] == object) return candidateValues[c];
+        }
+        return 0;
+    }
+
+    // Best net value over the person's candidates, at least zero for staying unassigned
+    private double bestNetValue(final int person) {
+        double best = 0;
+        for (int c = candidateStart[person]; c < candidateStart[person + 1]; ++c) {
+            final int object = candidateObjects[c];
+            if (capacity[object] == 0) continue;
+            best = Math.max(best, candidateValues[c] - slotPrice[cheapestSlot(object)]);
+        }
+        return best;
+    }
+}
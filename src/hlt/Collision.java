@@ -11,42 +11,107 @@ public class Collision {
      * @return true if the segment intersects, false otherwise
      */
     public static boolean segmentCircleIntersect(final Position start, final Position end, final Entity circle, final double fudge) {
-        // Parameterize the segment as start + t * (end - start),
-        // and substitute into the equation of a circle
-        // Solve for t
-        final double circleRadius = circle.getRadius();
-        final double startX = start.getXPos();
-        final double startY = start.getYPos();
-        final double endX = end.getXPos();
-        final double endY = end.getYPos();
-        final double centerX = circle.getXPos();
-        final double centerY = circle.getYPos();
+        return segmentCircleIntersect(start.getXPos(), start.getYPos(), end.getXPos(), end.getYPos(),
+                circle.getXPos(), circle.getYPos(), circle.getRadius(), fudge);
+    }
+
+    /**
+     * Primitive version of {@link #segmentCircleIntersect(Position, Position, Entity, double)}.
+     */
+    public static boolean segmentCircleIntersect(final double startX, final double startY,
+                                                 final double endX, final double endY,
+                                                 final double centerX, final double centerY,
+                                                 final double circleRadius, final double fudge) {
         final double dx = endX - startX;
         final double dy = endY - startY;
+        final double a = dx * dx + dy * dy;
+        return hits(dx, dy, a == 0.0 ? 0.0 : 1 / a, centerX - startX, centerY - startY, circleRadius + fudge);
+    }
 
-        final double a = square(dx) + square(dy);
-
-        final double b = -2 * (square(startX) - (startX * endX)
-                            - (startX * centerX) + (endX * centerX)
-                            + square(startY) - (startY * endY)
-                            - (startY * centerY) + (endY * centerY));
-
-        if (a == 0.0) {
-            // Start and end are the same point
-            return start.getDistanceTo(circle) <= circleRadius + fudge;
+    /**
+     * Test one segment against the first {@code count} circles of struct-of-arrays coordinates,
+     * with the same test as {@link #segmentCircleIntersect}. The segment's terms are computed once
+     * for the whole batch.
+     *
+     * @param hits receives the indices of the circles hit, in increasing order; must hold {@code count} items
+     * @return the number of circles hit
+     */
+    public static int segmentCirclesIntersect(final double startX, final double startY,
+                                              final double endX, final double endY,
+                                              final double[] xs, final double[] ys, final double[] radii,
+                                              final int count, final double fudge, final int[] hits) {
+        final double dx = endX - startX;
+        final double dy = endY - startY;
+        final double a = dx * dx + dy * dy;
+        final double inverse = a == 0.0 ? 0.0 : 1 / a;
+        int found = 0;
+        for (int i = 0; i < count; ++i) {
+            if (hits(dx, dy, inverse, xs[i] - startX, ys[i] - startY, radii[i] + fudge)) hits[found++] = i;
         }
+        return found;
+    }
 
-        // Time along segment when closest to the circle (vertex of the quadratic)
-        final double t = Math.min(-b / (2 * a), 1.0);
-        if (t < 0) {
-            return false;
+    /**
+     * Like {@link #segmentCirclesIntersect(double, double, double, double, double[], double[], double[], int, double, int[])}
+     * over the circles listed in {@code items[from, to)}.
+     *
+     * @param hits receives the hit entries of {@code items}, in order; must hold {@code to - from} items
+     * @return the number of circles hit
+     */
+    public static int segmentCirclesIntersect(final double startX, final double startY,
+                                              final double endX, final double endY,
+                                              final double[] xs, final double[] ys, final double[] radii,
+                                              final int[] items, final int from, final int to,
+                                              final double fudge, final int[] hits) {
+        final double dx = endX - startX;
+        final double dy = endY - startY;
+        final double a = dx * dx + dy * dy;
+        final double inverse = a == 0.0 ? 0.0 : 1 / a;
+        int found = 0;
+        for (int k = from; k < to; ++k) {
+            final int i = items[k];
+            if (hits(dx, dy, inverse, xs[i] - startX, ys[i] - startY, radii[i] + fudge)) hits[found++] = i;
         }
+        return found;
+    }
 
-        final double closestX = startX + dx * t;
-        final double closestY = startY + dy * t;
-        final double closestDistance = new Position(closestX, closestY).getDistanceTo(circle);
+    /**
+     * Early-exit version of
+     * {@link #segmentCirclesIntersect(double, double, double, double, double[], double[], double[], int, double, int[])}.
+     *
+     * @return the lowest index of a circle hit, or -1 if the segment is clear of them all
+     */
+    public static int firstSegmentCircleIntersect(final double startX, final double startY,
+                                                  final double endX, final double endY,
+                                                  final double[] xs, final double[] ys, final double[] radii,
+                                                  final int count, final double fudge) {
+        final double dx = endX - startX;
+        final double dy = endY - startY;
+        final double a = dx * dx + dy * dy;
+        final double inverse = a == 0.0 ? 0.0 : 1 / a;
+        for (int i = 0; i < count; ++i) {
+            if (hits(dx, dy, inverse, xs[i] - startX, ys[i] - startY, radii[i] + fudge)) return i;
+        }
+        return -1;
+    }
 
-        return closestDistance <= circleRadius + fudge;
+    /**
+     * The exact test, relative to the start of the segment: the point of the segment closest to
+     * the centre is at {@code t = (d . o) / |d|^2}, clamped to at most the end. Circles behind the
+     * start never block.
+     *
+     * @param inverse 1 / |d|^2, or 0 for a zero length segment
+     * @param ox offset of the centre from the start
+     * @param reach circle radius plus fudge
+     */
+    private static boolean hits(final double dx, final double dy, final double inverse,
+                                final double ox, final double oy, final double reach) {
+        final double dot = dx * ox + dy * oy;
+        if (dot < 0) return false;
+        final double t = Math.min(dot * inverse, 1.0);
+        final double px = ox - dx * t;
+        final double py = oy - dy * t;
+        return px * px + py * py <= reach * reach;
     }
 
     public static double square(final double num) {
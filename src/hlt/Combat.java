@@ -0,0 +1,323 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the outcome of a local fight: the ships near a point are simulated for a few turns,
+ * with the weapon rules of {@link Simulator}: undocked ships fire at every enemy ship within
+ * range, splitting {@link Constants#WEAPON_DAMAGE} between them, damage is simultaneous, and
+ * docked ships do not fire. Undocked ships with nobody in range close in on their nearest enemy
+ * at full speed; collisions and planets are ignored.
+ *
+ * Ships are held in primitive arrays that are reused between fights, so an estimate allocates
+ * nothing once the buffers have grown to the largest fight. An instance is not thread-safe.
+ */
+public class Combat {
+
+    private static final double RANGE = Constants.WEAPON_RADIUS + Constants.SHIP_RADIUS;
+    // Ships closing in stop this far inside weapon range
+    private static final double CLOSE_IN_MARGIN = 0.5;
+
+    private int count;
+    private int[] owner = new int[32];
+    private double[] x = new double[32];
+    private double[] y = new double[32];
+    private int[] health = new int[32];
+    private boolean[] armed = new boolean[32];
+    private int[] cooldown = new int[32];
+
+    // The fight being simulated, with ships grouped by owner; order maps back to the ships above
+    private int[] order = new int[32];
+    private double[] simX = new double[32];
+    private double[] simY = new double[32];
+    private double[] nextX = new double[32];
+    private double[] nextY = new double[32];
+    private int[] simHealth = new int[32];
+    private int[] simCooldown = new int[32];
+    private boolean[] simArmed = new boolean[32];
+    private int[] simGroup = new int[32];
+    private int[] damage = new int[32];
+    private int[] targets = new int[32];
+    // Ships of group g are [groupStart[g], groupStart[g + 1])
+    private int groups;
+    private int[] groupOwner = new int[32];
+    private int[] groupStart = new int[33];
+    private int[] found = new int[64];
+    // Per world slot: stamp of the fight it was added to and its index there, so ships are not added twice
+    private int[] slotStamp = new int[64];
+    private int[] slotIndex = new int[64];
+    private int stamp = 1;
+
+    public void clear() {
+        count = 0;
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(slotStamp, 0);
+            stamp = 1;
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Add a ship to the fight.
+     * @param docked true for ships in any docking state, which do not fire or move
+     * @return the ship's index in the fight
+     */
+    public int add(final int owner, final double x, final double y, final int health,
+                   final boolean docked, final int cooldown) {
+        if (count == this.owner.length) grow();
+        final int i = count++;
+        this.owner[i] = owner;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.health[i] = health;
+        this.armed[i] = !docked;
+        this.cooldown[i] = cooldown;
+        return i;
+    }
+
+    /**
+     * Add a ship of the world, unless it is already in the fight.
+     * @return the ship's index in the fight
+     */
+    public int addShip(final WorldState world, final int slot) {
+        if (slot >= slotStamp.length) {
+            final int size = Math.max(slot + 1, slotStamp.length * 2);
+            slotStamp = Arrays.copyOf(slotStamp, size);
+            slotIndex = Arrays.copyOf(slotIndex, size);
+        }
+        if (slotStamp[slot] == stamp) return slotIndex[slot];
+        slotStamp[slot] = stamp;
+        slotIndex[slot] = count;
+        return add(world.getShipOwner(slot), world.getShipX(slot), world.getShipY(slot), world.getShipHealth(slot),
+                !world.isShipUndocked(slot), world.getShipCooldown(slot));
+    }
+
+    /**
+     * Add every ship of the world whose centre is within {@code radius} of the point.
+     * @param index spatial index over the world's ships
+     * @return the number of ships added
+     */
+    public int addShips(final WorldState world, final SpatialIndex index,
+                        final double x, final double y, final double radius) {
+        if (found.length < index.getCount()) found = new int[Math.max(index.getCount(), found.length * 2)];
+        final int hits = index.queryCircle(x, y, radius, found);
+        final int before = count;
+        for (int h = 0; h < hits; ++h) {
+            final int s = found[h];
+            final double dx = world.getShipX(s) - x;
+            final double dy = world.getShipY(s) - y;
+            if (dx * dx + dy * dy <= radius * radius) addShip(world, s);
+        }
+        return count - before;
+    }
+
+    /**
+     * Play the fight out for the given number of turns, or until one side is left.
+     */
+    public void simulate(final int turns) {
+        sortByOwner();
+        for (int turn = 0; turn < turns && contested(); ++turn) {
+            for (int k = 0; k < count; ++k) {
+                if (simCooldown[k] > 0) --simCooldown[k];
+            }
+            closeIn();
+            fire();
+        }
+        for (int k = 0; k < count; ++k) {
+            final int i = order[k];
+            x[i] = simX[k];
+            y[i] = simY[k];
+            health[i] = simHealth[k];
+            cooldown[i] = simCooldown[k];
+        }
+    }
+
+    public boolean isAlive(final int index) {
+        return health[index] > 0;
+    }
+
+    /** Ships of the owner still alive */
+    public int getSurvivors(final int owner) {
+        int survivors = 0;
+        for (int i = 0; i < count; ++i) {
+            if (this.owner[i] == owner && health[i] > 0) ++survivors;
+        }
+        return survivors;
+    }
+
+    /** Ships of every other owner still alive */
+    public int getEnemySurvivors(final int owner) {
+        int survivors = 0;
+        for (int i = 0; i < count; ++i) {
+            if (this.owner[i] != owner && health[i] > 0) ++survivors;
+        }
+        return survivors;
+    }
+
+    /** Health left over the owner's ships */
+    public int getHealth(final int owner) {
+        int total = 0;
+        for (int i = 0; i < count; ++i) {
+            if (this.owner[i] == owner && health[i] > 0) total += health[i];
+        }
+        return total;
+    }
+
+    /** Health left over every other owner's ships */
+    public int getEnemyHealth(final int owner) {
+        int total = 0;
+        for (int i = 0; i < count; ++i) {
+            if (this.owner[i] != owner && health[i] > 0) total += health[i];
+        }
+        return total;
+    }
+
+    /**
+     * @return true if the owner has no ships left while some enemy does
+     */
+    public boolean isLost(final int owner) {
+        return getSurvivors(owner) == 0 && getEnemySurvivors(owner) > 0;
+    }
+
+    /**
+     * Copy the ships into the simulation arrays grouped by owner, so that the inner loops run over
+     * a group's enemies, the ships before and after the group, without testing owners.
+     */
+    private void sortByOwner() {
+        groups = 0;
+        int sorted = 0;
+        while (sorted < count) {
+            // The next owner not yet copied: the owner of the first ship not in any group
+            int owner = 0;
+            boolean found = false;
+            for (int i = 0; i < count && !found; ++i) {
+                owner = this.owner[i];
+                found = true;
+                for (int g = 0; g < groups; ++g) {
+                    if (groupOwner[g] == owner) {
+                        found = false;
+                        break;
+                    }
+                }
+            }
+            groupOwner[groups] = owner;
+            groupStart[groups] = sorted;
+            for (int i = 0; i < count; ++i) {
+                if (this.owner[i] != owner) continue;
+                order[sorted] = i;
+                simX[sorted] = x[i];
+                simY[sorted] = y[i];
+                simHealth[sorted] = health[i];
+                simCooldown[sorted] = cooldown[i];
+                simArmed[sorted] = armed[i];
+                simGroup[sorted] = groups;
+                ++sorted;
+            }
+            groupStart[++groups] = sorted;
+        }
+    }
+
+    // True while ships of more than one group are alive
+    private boolean contested() {
+        int alive = 0;
+        for (int g = 0; g < groups; ++g) {
+            for (int k = groupStart[g]; k < groupStart[g + 1]; ++k) {
+                if (simHealth[k] > 0) {
+                    ++alive;
+                    break;
+                }
+            }
+        }
+        return alive > 1;
+    }
+
+    private void closeIn() {
+        // Ships move simultaneously, each towards where its nearest enemy was at the start of the turn
+        final double[] x = simX, y = simY;
+        final int[] health = simHealth;
+        for (int k = 0; k < count; ++k) {
+            nextX[k] = x[k];
+            nextY[k] = y[k];
+            if (health[k] <= 0 || !simArmed[k]) continue;
+            final double sx = x[k], sy = y[k];
+            final int group = simGroup[k];
+            int nearest = -1;
+            double nearestSq = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < count; ++j) {
+                if (j == groupStart[group]) j = groupStart[group + 1];
+                if (j == count) break;
+                if (health[j] <= 0) continue;
+                final double dx = x[j] - sx;
+                final double dy = y[j] - sy;
+                final double distanceSq = dx * dx + dy * dy;
+                if (distanceSq < nearestSq) {
+                    nearest = j;
+                    nearestSq = distanceSq;
+                }
+            }
+            if (nearest == -1 || nearestSq <= RANGE * RANGE) continue;
+            final double distance = Math.sqrt(nearestSq);
+            final double fraction = Math.min(Constants.MAX_SPEED, distance - RANGE + CLOSE_IN_MARGIN) / distance;
+            nextX[k] += (x[nearest] - sx) * fraction;
+            nextY[k] += (y[nearest] - sy) * fraction;
+        }
+        simX = nextX;
+        simY = nextY;
+        nextX = x;
+        nextY = y;
+    }
+
+    private void fire() {
+        final double[] x = simX, y = simY;
+        final int[] health = simHealth;
+        for (int k = 0; k < count; ++k) damage[k] = 0;
+        for (int k = 0; k < count; ++k) {
+            if (health[k] <= 0 || !simArmed[k] || simCooldown[k] > 0) continue;
+            final double sx = x[k], sy = y[k];
+            final int group = simGroup[k];
+            int targetCount = 0;
+            for (int j = 0; j < count; ++j) {
+                if (j == groupStart[group]) j = groupStart[group + 1];
+                if (j == count) break;
+                if (health[j] <= 0) continue;
+                final double dx = x[j] - sx;
+                final double dy = y[j] - sy;
+                if (dx * dx + dy * dy <= RANGE * RANGE) targets[targetCount++] = j;
+            }
+            if (targetCount == 0) continue;
+            simCooldown[k] = Constants.WEAPON_COOLDOWN;
+            final int share = Constants.WEAPON_DAMAGE / targetCount;
+            for (int t = 0; t < targetCount; ++t) damage[targets[t]] += share;
+        }
+        // Damage is simultaneous
+        for (int k = 0; k < count; ++k) {
+            if (health[k] > 0) health[k] -= damage[k];
+        }
+    }
+
+    private void grow() {
+        final int size = owner.length * 2;
+        owner = Arrays.copyOf(owner, size);
+        x = Arrays.copyOf(x, size);
+        y = Arrays.copyOf(y, size);
+        health = Arrays.copyOf(health, size);
+        armed = Arrays.copyOf(armed, size);
+        cooldown = Arrays.copyOf(cooldown, size);
+        order = new int[size];
+        simX = new double[size];
+        simY = new double[size];
+        nextX = new double[size];
+        nextY = new double[size];
+        simHealth = new int[size];
+        simCooldown = new int[size];
+        simArmed = new boolean[size];
+        simGroup = new int[size];
+        damage = new int[size];
+        targets = new int[size];
+        groupOwner = new int[size];
+        groupStart = new int[size + 1];
+    }
+}
@@ -44,6 +44,9 @@ public class Constants {
     /** Distance from the planets edge at which new ships are created */
     public static final double SPAWN_RADIUS = 2.0;
 
+    /** Production units a planet needs to create a ship */
+    public static final int SHIP_COST = 72;
+
     ////////////////////////////////////////////////////////////////////////
     // Implementation-specific constants
 
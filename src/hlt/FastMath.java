@@ -0,0 +1,104 @@
+package hlt;
+
+/**
+ * Angle and distance helpers for the integer-degree move space.
+ *
+ * Thrust headings are whole degrees, so their sines and cosines come from 360-entry tables,
+ * filled with exactly the values {@code Math.cos(Math.toRadians(deg))} gives. The heading
+ * towards a point is found with a table of arctangents over [0, 1] and linear interpolation,
+ * accurate to about 1e-5 degrees; only when that lands so close to a half degree that the
+ * rounding could go either way is it settled with {@link Math#atan2}. Results are therefore the
+ * same as the plain {@code Math} expressions, at a fraction of the cost.
+ */
+public final class FastMath {
+
+    private static final double[] COS_DEG = new double[360];
+    private static final double[] SIN_DEG = new double[360];
+    // atan(i / ATAN_STEPS) in degrees, for i in [0, ATAN_STEPS]
+    private static final int ATAN_STEPS = 1024;
+    private static final double[] ATAN_DEG = new double[ATAN_STEPS + 1];
+    // Bound on the interpolation error, with a wide margin, in degrees
+    private static final double ATAN_TOLERANCE = 1e-4;
+
+    static {
+        for (int deg = 0; deg < 360; ++deg) {
+            COS_DEG[deg] = Math.cos(Math.toRadians(deg));
+            SIN_DEG[deg] = Math.sin(Math.toRadians(deg));
+        }
+        for (int i = 0; i <= ATAN_STEPS; ++i) {
+            ATAN_DEG[i] = Math.toDegrees(Math.atan((double) i / ATAN_STEPS));
+        }
+    }
+
+    private FastMath() {
+    }
+
+    /** Cosine of a whole number of degrees, any sign or size */
+    public static double cosDeg(final int deg) {
+        return COS_DEG[Math.floorMod(deg, 360)];
+    }
+
+    /** Sine of a whole number of degrees, any sign or size */
+    public static double sinDeg(final int deg) {
+        return SIN_DEG[Math.floorMod(deg, 360)];
+    }
+
+    /**
+     * Heading of the vector in whole degrees, in [0, 360) as the engine requires; the same as
+     * {@link Position#orientTowardsInDeg}.
+     */
+    public static int atan2Deg(final double dy, final double dx) {
+        final double ax = Math.abs(dx);
+        final double ay = Math.abs(dy);
+        if (ax == 0 && ay == 0 || Double.isNaN(dx) || Double.isNaN(dy) || Double.isInfinite(ax + ay)) {
+            return exactAtan2Deg(dy, dx);
+        }
+        // Angle from the nearer axis, within the first octant
+        final boolean steep = ay > ax;
+        final double ratio = steep ? ax / ay : ay / ax;
+        final double scaled = ratio * ATAN_STEPS;
+        final int i = Math.min((int) scaled, ATAN_STEPS - 1);
+        final double octant = ATAN_DEG[i] + (ATAN_DEG[i + 1] - ATAN_DEG[i]) * (scaled - i);
+
+        double deg = steep ? 90 - octant : octant;
+        if (dx < 0) deg = 180 - deg;
+        if (dy < 0) deg = -deg;
+        // Too close to a rounding boundary for the approximation to decide
+        final double fraction = deg - Math.floor(deg);
+        if (Math.abs(fraction - 0.5) < ATAN_TOLERANCE) {
+            return exactAtan2Deg(dy, dx);
+        }
+        return (int) Math.floorMod(Math.round(deg), 360L);
+    }
+
+    private static int exactAtan2Deg(final double dy, final double dx) {
+        return Util.angleRadToDegClipped(Math.atan2(dy, dx) + 2 * Math.PI);
+    }
+
+    /** Heading from the first point towards the second, in whole degrees */
+    public static int headingDeg(final double fromX, final double fromY, final double toX, final double toY) {
+        return atan2Deg(toY - fromY, toX - fromX);
+    }
+
+    public static double distanceSq(final double x0, final double y0, final double x1, final double y1) {
+        final double dx = x1 - x0;
+        final double dy = y1 - y0;
+        return dx * dx + dy * dy;
+    }
+
+    public static double distance(final double x0, final double y0, final double x1, final double y1) {
+        return Math.sqrt(distanceSq(x0, y0, x1, y1));
+    }
+
+    /** True if the points are no further apart than the given distance, without a square root */
+    public static boolean isWithin(final double x0, final double y0, final double x1, final double y1,
+                                   final double distance) {
+        return distanceSq(x0, y0, x1, y1) <= distance * distance;
+    }
+
+    /** True if the points are strictly closer than the given distance, without a square root */
+    public static boolean isCloserThan(final double x0, final double y0, final double x1, final double y1,
+                                       final double distance) {
+        return distanceSq(x0, y0, x1, y1) < distance * distance;
+    }
+}
@@ -0,0 +1,221 @@
+package hlt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Line oriented tokenizer reading engine messages straight from bytes.
+ *
+ * Input is read into a single reusable buffer; ints and decimal doubles are parsed in place
+ * without creating Strings. Call {@link #nextLine()} to load the next message, then consume
+ * its tokens through the {@link TokenSource} methods.
+ */
+public class FrameReader implements TokenSource {
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    // Exactly representable powers of ten; dividing by these is correctly rounded
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // Largest mantissa that is still exactly representable as a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private byte[] bytes;
+
+    // Current line is bytes[lineStart, lineEnd); pos is the parse cursor within it
+    private int lineStart;
+    private int lineEnd;
+    private int pos;
+    // Start of data not yet consumed as a line, and end of data read so far
+    private int dataStart;
+    private int dataEnd;
+    // System.nanoTime() when the current line's first bytes were at hand
+    private long lineArrival;
+
+    public FrameReader(final InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    public FrameReader(final ReadableByteChannel channel) {
+        this.channel = channel;
+        this.bytes = new byte[INITIAL_CAPACITY];
+        this.buffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Load the next line of input, blocking until it is complete.
+     * @return false if the input ended before a new line started
+     */
+    public boolean nextLine() throws IOException {
+        int scan = dataStart;
+        // Bytes already buffered arrived while we were busy; otherwise the clock starts on the first read
+        lineArrival = dataStart < dataEnd ? System.nanoTime() : 0;
+        while (true) {
+            for (; scan < dataEnd; ++scan) {
+                if (bytes[scan] == '\n') {
+                    setLine(dataStart, scan);
+                    dataStart = scan + 1;
+                    return true;
+                }
+            }
+            final int consumed = dataStart;
+            if (!fill()) {
+                if (dataStart == dataEnd) return false;
+                // Last line without a trailing newline
+                setLine(dataStart, dataEnd);
+                dataStart = dataEnd;
+                return true;
+            }
+            scan -= consumed - dataStart;
+            if (lineArrival == 0 && dataStart < dataEnd) lineArrival = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the first bytes of the current line were available,
+     * so that the time since excludes waiting for the sender
+     */
+    public long getLineArrivalNanos() {
+        return lineArrival;
+    }
+
+    private void setLine(final int start, int end) {
+        // Ignore carriage return if on windows for manual testing.
+        if (end > start && bytes[end - 1] == '\r') --end;
+        lineStart = start;
+        lineEnd = end;
+        pos = start;
+    }
+
+    /**
+     * Read more input, compacting or growing the buffer first when it is full.
+     * @return false at end of input
+     */
+    private boolean fill() throws IOException {
+        if (dataEnd == bytes.length) {
+            final int pending = dataEnd - dataStart;
+            if (dataStart == 0) {
+                final byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, pending);
+                bytes = grown;
+                buffer = ByteBuffer.wrap(bytes);
+            } else {
+                System.arraycopy(bytes, dataStart, bytes, 0, pending);
+            }
+            dataStart = 0;
+            dataEnd = pending;
+        }
+        buffer.limit(bytes.length);
+        buffer.position(dataEnd);
+        final int read = channel.read(buffer);
+        if (read < 0) return false;
+        dataEnd += read;
+        return true;
+    }
+
+    /**
+     * Raw bytes of the current line, valid until the next call to {@link #nextLine()}.
+     * @see #getLineStart()
+     * @see #getLineLength()
+     */
+    public byte[] getLineBytes() {
+        return bytes;
+    }
+
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    public int getLineLength() {
+        return lineEnd - lineStart;
+    }
+
+    @Override
+    public int nextInt() {
+        skipSpaces();
+        final boolean negative = pos < lineEnd && bytes[pos] == '-';
+        if (negative) ++pos;
+        final int start = pos;
+        long value = 0;
+        while (pos < lineEnd && isDigit(bytes[pos])) {
+            value = value * 10 + (bytes[pos++] - '0');
+        }
+        final long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        if (pos == start || pos - start > 10 || value > limit || (pos < lineEnd && bytes[pos] != ' ')) {
+            throw malformed(start);
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    @Override
+    public double nextDouble() {
+        skipSpaces();
+        final int tokenStart = pos;
+        final boolean negative = pos < lineEnd && bytes[pos] == '-';
+        if (negative) ++pos;
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        while (pos < lineEnd && bytes[pos] != ' ') {
+            final byte b = bytes[pos];
+            if (isDigit(b)) {
+                mantissa = mantissa * 10 + (b - '0');
+                ++digits;
+                if (fraction) ++fractionDigits;
+                if (mantissa >= MAX_EXACT_MANTISSA) return slowDouble(tokenStart);
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                // exponents, inf/nan and anything else unusual
+                return slowDouble(tokenStart);
+            }
+            ++pos;
+        }
+        if (digits == 0) throw malformed(tokenStart);
+        if (fractionDigits >= POW10.length) return slowDouble(tokenStart);
+        final double value = mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private double slowDouble(final int tokenStart) {
+        pos = tokenStart;
+        while (pos < lineEnd && bytes[pos] != ' ') ++pos;
+        final String token = new String(bytes, tokenStart, pos - tokenStart, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw malformed(tokenStart);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        skipSpaces();
+        return pos == lineEnd;
+    }
+
+    private void skipSpaces() {
+        while (pos < lineEnd && bytes[pos] == ' ') ++pos;
+    }
+
+    private static boolean isDigit(final byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private IllegalStateException malformed(final int tokenStart) {
+        int end = tokenStart;
+        while (end < lineEnd && bytes[end] != ' ') ++end;
+        return new IllegalStateException("Malformed token '"
+                + new String(bytes, tokenStart, end - tokenStart, StandardCharsets.US_ASCII)
+                + "' at column " + (tokenStart - lineStart));
+    }
+}
@@ -1,13 +1,21 @@
 package hlt;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Collections;
 import java.util.Collection;
+import java.util.function.IntPredicate;
 
 public class GameMap {
+    private static final double INDEX_CELL_SIZE = 8.0;
+    // Scratch for addEntitiesBetween, which may be called from several planning threads
+    private static final ThreadLocal<EntityBatch> ENTITY_BATCHES = ThreadLocal.withInitial(EntityBatch::new);
+    // Scratch for the slots objectsBetween finds, likewise per thread
+    private static final ThreadLocal<SlotBuffer> SLOT_BUFFERS = ThreadLocal.withInitial(SlotBuffer::new);
+
     private final int width, height;
     private final int playerId;
     private final List<Player> players;
@@ -15,9 +23,11 @@ public class GameMap {
     private final Map<Integer, Planet> planets;
     private final List<Ship> allShips;
     private final List<Ship> allShipsUnmodifiable;
-
-    // used only during parsing to reduce memory allocations
-    private final List<Ship> currentShips = new ArrayList<>();
+    private final WorldState world;
+    private final SpatialIndex shipIndex;
+    private final SpatialIndex planetIndex;
+    private final WorldDelta delta;
+    private final List<WorldListener> listeners;
 
     public GameMap(final int width, final int height, final int playerId) {
         this.width = width;
@@ -28,6 +38,11 @@ public class GameMap {
         planets = new TreeMap<>();
         allShips = new ArrayList<>();
         allShipsUnmodifiable = Collections.unmodifiableList(allShips);
+        world = new WorldState();
+        shipIndex = new SpatialIndex(width, height, INDEX_CELL_SIZE);
+        planetIndex = new SpatialIndex(width, height, INDEX_CELL_SIZE);
+        delta = new WorldDelta();
+        listeners = new ArrayList<>();
     }
 
     public int getHeight() {
@@ -66,26 +81,167 @@ public class GameMap {
         return allShipsUnmodifiable;
     }
 
+    /**
+     * @return primitive snapshot of the current frame, for hot loops that should not touch Ship/Planet objects
+     */
+    public WorldState getWorld() {
+        return world;
+    }
+
+    /**
+     * @return spatial index over the ship slots of {@link #getWorld()}
+     */
+    public SpatialIndex getShipIndex() {
+        return shipIndex;
+    }
+
+    /**
+     * @return spatial index over the planet slots of {@link #getWorld()}
+     */
+    public SpatialIndex getPlanetIndex() {
+        return planetIndex;
+    }
+
+    /**
+     * @return what changed between the previous frame and the current one
+     */
+    public WorldDelta getDelta() {
+        return delta;
+    }
+
+    /**
+     * Have the listener told what changed after every map update, once the map is up to date.
+     */
+    public void addListener(final WorldListener listener) {
+        listeners.add(listener);
+    }
+
     public ArrayList<Entity> objectsBetween(Position start, Position target) {
         final ArrayList<Entity> entitiesFound = new ArrayList<>();
+        final double startX = start.getXPos();
+        final double startY = start.getYPos();
+        final double targetX = target.getXPos();
+        final double targetY = target.getYPos();
 
-        addEntitiesBetween(entitiesFound, start, target, planets.values());
-        addEntitiesBetween(entitiesFound, start, target, getMyPlayer().getShips().values());
+        // Only materialise views for the entities that are hit
+        final int[] found = SLOT_BUFFERS.get().get(Math.max(planetIndex.getCount(), shipIndex.getCount()));
+        int count = planetIndex.querySegment(startX, startY, targetX, targetY, Constants.FORECAST_FUDGE_FACTOR,
+                planetObstacle(start, target), found);
+        for (int i = 0; i < count; ++i) {
+            entitiesFound.add(world.getPlanet(found[i]));
+        }
+        count = shipIndex.querySegment(startX, startY, targetX, targetY, Constants.FORECAST_FUDGE_FACTOR,
+                shipObstacle(start, target, true), found);
+        for (int i = 0; i < count; ++i) {
+            entitiesFound.add(world.getShip(found[i]));
+        }
 
         return entitiesFound;
     }
 
+    /**
+     * Early-exit version of {@code !objectsBetween(start, target).isEmpty()}.
+     */
+    public boolean hasObstacleBetween(final Position start, final Position target) {
+        return hasObstacleBetween(start, target, true);
+    }
+
+    /**
+     * Like {@link #hasObstacleBetween(Position, Position)}, but ignores our undocked ships,
+     * which will usually have moved out of the way by the end of the turn.
+     */
+    public boolean hasStaticObstacleBetween(final Position start, final Position target) {
+        return hasObstacleBetween(start, target, false);
+    }
+
+    private boolean hasObstacleBetween(final Position start, final Position target, final boolean undockedShips) {
+        final double startX = start.getXPos();
+        final double startY = start.getYPos();
+        final double targetX = target.getXPos();
+        final double targetY = target.getYPos();
+        return planetIndex.firstOnSegment(startX, startY, targetX, targetY, Constants.FORECAST_FUDGE_FACTOR,
+                        planetObstacle(start, target)) != -1
+                || shipIndex.firstOnSegment(startX, startY, targetX, targetY, Constants.FORECAST_FUDGE_FACTOR,
+                        shipObstacle(start, target, undockedShips)) != -1;
+    }
+
+    private IntPredicate planetObstacle(final Position start, final Position target) {
+        return slot -> !isSameEntity(start, Planet.class, world.getPlanetX(slot), world.getPlanetY(slot))
+                && !isSameEntity(target, Planet.class, world.getPlanetX(slot), world.getPlanetY(slot));
+    }
+
+    // Our ships, except the ones at either end of the path
+    private IntPredicate shipObstacle(final Position start, final Position target, final boolean undockedShips) {
+        return slot -> world.getShipOwner(slot) == playerId
+                && (undockedShips || !world.isShipUndocked(slot))
+                && !isSameEntity(start, Ship.class, world.getShipX(slot), world.getShipY(slot))
+                && !isSameEntity(target, Ship.class, world.getShipX(slot), world.getShipY(slot));
+    }
+
+    // Equivalent of entity.equals(position) for an entity stored in the world arrays
+    static boolean isSameEntity(final Position position, final Class<?> entityClass,
+                                        final double x, final double y) {
+        return position.getClass() == entityClass
+                && Double.compare(position.getXPos(), x) == 0
+                && Double.compare(position.getYPos(), y) == 0;
+    }
+
     public static void addEntitiesBetween(final List<Entity> entitiesFound,
                                            final Position start, final Position target,
                                            final Collection<? extends Entity> entitiesToCheck) {
-
-        for (final Entity entity : entitiesToCheck) {
+        // Copy the circles out and test them as one batch; only the hits are compared against the ends
+        final EntityBatch batch = ENTITY_BATCHES.get();
+        final int count = batch.load(entitiesToCheck);
+        final int hitCount = Collision.segmentCirclesIntersect(start.getXPos(), start.getYPos(),
+                target.getXPos(), target.getYPos(), batch.xs, batch.ys, batch.radii, count,
+                Constants.FORECAST_FUDGE_FACTOR, batch.hits);
+        for (int h = 0; h < hitCount; ++h) {
+            final Entity entity = batch.entities[batch.hits[h]];
             if (entity.equals(start) || entity.equals(target)) {
                 continue;
             }
-            if (Collision.segmentCircleIntersect(start, target, entity, Constants.FORECAST_FUDGE_FACTOR)) {
-                entitiesFound.add(entity);
+            entitiesFound.add(entity);
+        }
+        Arrays.fill(batch.entities, 0, count, null);
+    }
+
+    // Per-thread slot array, grown to the largest query seen
+    private static final class SlotBuffer {
+        private int[] slots = new int[64];
+
+        int[] get(final int capacity) {
+            if (slots.length < capacity) slots = new int[Math.max(capacity, slots.length * 2)];
+            return slots;
+        }
+    }
+
+    // Per-thread struct-of-arrays copy of a collection of entities
+    private static final class EntityBatch {
+        Entity[] entities = new Entity[64];
+        double[] xs = new double[64];
+        double[] ys = new double[64];
+        double[] radii = new double[64];
+        int[] hits = new int[64];
+
+        int load(final Collection<? extends Entity> source) {
+            final int count = source.size();
+            if (entities.length < count) {
+                final int size = Math.max(count, entities.length * 2);
+                entities = new Entity[size];
+                xs = new double[size];
+                ys = new double[size];
+                radii = new double[size];
+                hits = new int[size];
             }
+            int i = 0;
+            for (final Entity entity : source) {
+                entities[i] = entity;
+                xs[i] = entity.getXPos();
+                ys[i] = entity.getYPos();
+                radii[i] = entity.getRadius();
+                ++i;
+            }
+            return i;
         }
     }
 
@@ -109,41 +265,44 @@ public class GameMap {
         return entityByDistance;
     }
 
-    public GameMap updateMap(final Metadata mapMetadata) {
-        final int numberOfPlayers = MetadataParser.parsePlayerNum(mapMetadata);
+    public GameMap updateMap(final TokenSource frame) {
+        world.update(frame);
+        delta.compute(world);
+        shipIndex.rebuild(world.getShipCount(), world.shipXs(), world.shipYs(), world.shipRadii());
+        planetIndex.rebuild(world.getPlanetCount(), world.planetXs(), world.planetYs(), world.planetRadii());
 
-        players.clear();
+        final int numberOfPlayers = world.getPlayerCount();
+        if (players.size() != numberOfPlayers) {
+            players.clear();
+            for (int i = 0; i < numberOfPlayers; ++i) {
+                players.add(new Player(world.getPlayerId(i)));
+            }
+        }
         planets.clear();
         allShips.clear();
 
         // update players info
         for (int i = 0; i < numberOfPlayers; ++i) {
-            currentShips.clear();
-            final Map<Integer, Ship> currentPlayerShips = new TreeMap<>();
-            final int playerId = MetadataParser.parsePlayerId(mapMetadata);
-
-            final Player currentPlayer = new Player(playerId, currentPlayerShips);
-            MetadataParser.populateShipList(currentShips, playerId, mapMetadata);
-            allShips.addAll(currentShips);
-
-            for (final Ship ship : currentShips) {
-                currentPlayerShips.put(ship.getId(), ship);
+            final Player player = players.get(i);
+            player.clearShips();
+            final int start = world.getPlayerShipStart(i);
+            final int end = start + world.getPlayerShipCount(i);
+            for (int slot = start; slot < end; ++slot) {
+                final Ship ship = world.getShip(slot);
+                allShips.add(ship);
+                player.addShip(ship);
             }
-            players.add(currentPlayer);
+            player.finishShips();
         }
 
-        final int numberOfPlanets = Integer.parseInt(mapMetadata.pop());
-
-        for (int i = 0; i < numberOfPlanets; ++i) {
-            final List<Integer> dockedShips = new ArrayList<>();
-            final Planet planet = MetadataParser.newPlanetFromMetadata(dockedShips, mapMetadata);
+        for (int slot = 0; slot < world.getPlanetCount(); ++slot) {
+            final Planet planet = world.getPlanet(slot);
             planets.put(planet.getId(), planet);
         }
 
-        if (!mapMetadata.isEmpty()) {
-            throw new IllegalStateException("Failed to parse data from Halite game engine. Please contact maintainers.");
+        for (final WorldListener listener : listeners) {
+            listener.worldUpdated(this, delta);
         }
-
         return this;
     }
 }
@@ -0,0 +1,163 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Coarse grid of ship influence over the map, in three layers: our undocked ships' strength,
+ * enemy undocked ships' strength, and the value of enemy ships in any docking state. Reading a
+ * layer at a point is a single array lookup.
+ *
+ * Each ship adds a weight of {@code 1 - d^2 / reach^2} to every cell whose centre is within
+ * {@code reach} of it, where reach is the radius plus half a cell diagonal; so every ship within
+ * the radius of a point adds a positive weight to that point's cell. The grid is updated
+ * incrementally from the {@link WorldDelta}: only ships that spawned, moved, changed docking
+ * status or were destroyed are taken out of their old cells and put into their new ones.
+ *
+ * Weights taken out of the grid are not dropped but moved to a trail that decays every turn, so
+ * the layers also remember where ships have recently been. Reads include the trail.
+ */
+public class InfluenceMap {
+
+    public static final int OURS = 0;
+    public static final int ENEMY = 1;
+    public static final int ENEMY_DOCKED = 2;
+    private static final int LAYERS = 3;
+    // Fraction of the trail left after a turn
+    private static final float DECAY = 0.5f;
+    private static final int INITIAL_IDS = 64;
+
+    private final int playerId;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final double reach;
+    // layer * cells + cell, cells column-major like SpatialIndex
+    private final float[] current;
+    private final float[] trail;
+
+    // Per owner, by ship id: where and in which layer the ship was stamped, -1 for nowhere
+    private final double[][] stampX = new double[Constants.MAX_PLAYERS][INITIAL_IDS];
+    private final double[][] stampY = new double[Constants.MAX_PLAYERS][INITIAL_IDS];
+    private final int[][] stampLayer = new int[Constants.MAX_PLAYERS][INITIAL_IDS];
+
+    /**
+     * Build the map from the current world and keep it up to date with every map update.
+     * @param radius distance within which a ship's influence is guaranteed to be read
+     * @param cellSize side of a grid cell
+     */
+    public InfluenceMap(final GameMap map, final double radius, final double cellSize) {
+        this.playerId = map.getMyPlayerId();
+        this.cellSize = cellSize;
+        this.columns = (int) (map.getWidth() / cellSize) + 1;
+        this.rows = (int) (map.getHeight() / cellSize) + 1;
+        this.reach = radius + cellSize * Math.sqrt(0.5);
+        current = new float[LAYERS * columns * rows];
+        trail = new float[LAYERS * columns * rows];
+        for (int owner = 0; owner < Constants.MAX_PLAYERS; ++owner) {
+            Arrays.fill(stampLayer[owner], -1);
+        }
+        final WorldState world = map.getWorld();
+        for (int slot = 0; slot < world.getShipCount(); ++slot) {
+            restamp(world, slot);
+        }
+        map.addListener(this::worldUpdated);
+    }
+
+    public float get(final int layer, final double x, final double y) {
+        final int i = layer * columns * rows + cell(x, y);
+        return current[i] + trail[i];
+    }
+
+    public float getOurs(final double x, final double y) {
+        return get(OURS, x, y);
+    }
+
+    public float getEnemy(final double x, final double y) {
+        return get(ENEMY, x, y);
+    }
+
+    public float getEnemyDocked(final double x, final double y) {
+        return get(ENEMY_DOCKED, x, y);
+    }
+
+    private void worldUpdated(final GameMap map, final WorldDelta delta) {
+        for (int i = 0; i < trail.length; ++i) trail[i] *= DECAY;
+        final WorldState world = map.getWorld();
+        for (int i = 0; i < delta.getDestroyedCount(); ++i) {
+            unstamp(delta.getDestroyedOwner(i), delta.getDestroyedId(i));
+        }
+        for (int i = 0; i < delta.getSpawnedCount(); ++i) restamp(world, delta.getSpawnedSlot(i));
+        for (int i = 0; i < delta.getMovedCount(); ++i) restamp(world, delta.getMovedSlot(i));
+        for (int i = 0; i < delta.getDockingChangedCount(); ++i) restamp(world, delta.getDockingChangedSlot(i));
+    }
+
+    // Move the ship's weight to its current position and layer, if either changed
+    private void restamp(final WorldState world, final int slot) {
+        final int owner = world.getShipOwner(slot);
+        final int id = world.getShipId(slot);
+        ensureShipRecords(owner, id);
+        final double x = world.getShipX(slot);
+        final double y = world.getShipY(slot);
+        final int layer = owner == playerId ? (world.isShipUndocked(slot) ? OURS : -1)
+                : (world.isShipUndocked(slot) ? ENEMY : ENEMY_DOCKED);
+        if (layer == stampLayer[owner][id] && x == stampX[owner][id] && y == stampY[owner][id]) return;
+        unstamp(owner, id);
+        if (layer == -1) return;
+        stamp(layer, x, y, 1);
+        stampLayer[owner][id] = layer;
+        stampX[owner][id] = x;
+        stampY[owner][id] = y;
+    }
+
+    private void unstamp(final int owner, final int id) {
+        if (id >= stampLayer[owner].length || stampLayer[owner][id] == -1) return;
+        stamp(stampLayer[owner][id], stampX[owner][id], stampY[owner][id], -1);
+        stampLayer[owner][id] = -1;
+    }
+
+    /**
+     * Add the ship's weights to the layer, or with sign -1 take them out and leave them in the trail.
+     */
+    private void stamp(final int layer, final double x, final double y, final int sign) {
+        final int base = layer * columns * rows;
+        final double reachSq = reach * reach;
+        final int x0 = clamp((int) Math.floor((x - reach) / cellSize), columns);
+        final int x1 = clamp((int) Math.floor((x + reach) / cellSize), columns);
+        final int y0 = clamp((int) Math.floor((y - reach) / cellSize), rows);
+        final int y1 = clamp((int) Math.floor((y + reach) / cellSize), rows);
+        for (int cx = x0; cx <= x1; ++cx) {
+            final double dx = (cx + 0.5) * cellSize - x;
+            for (int cy = y0; cy <= y1; ++cy) {
+                final double dy = (cy + 0.5) * cellSize - y;
+                final double distanceSq = dx * dx + dy * dy;
+                if (distanceSq >= reachSq) continue;
+                final float weight = (float) (1 - distanceSq / reachSq);
+                final int i = base + cx * rows + cy;
+                if (sign > 0) {
+                    current[i] += weight;
+                } else {
+                    current[i] -= weight;
+                    trail[i] += weight;
+                }
+            }
+        }
+    }
+
+    private int cell(final double x, final double y) {
+        return clamp((int) Math.floor(x / cellSize), columns) * rows + clamp((int) Math.floor(y / cellSize), rows);
+    }
+
+    private static int clamp(final int index, final int size) {
+        return index < 0 ? 0 : (index >= size ? size - 1 : index);
+    }
+
+    private void ensureShipRecords(final int owner, final int id) {
+        if (id < stampLayer[owner].length) return;
+        final int size = Math.max(id + 1, stampLayer[owner].length * 2);
+        final int old = stampLayer[owner].length;
+        stampX[owner] = Arrays.copyOf(stampX[owner], size);
+        stampY[owner] = Arrays.copyOf(stampY[owner], size);
+        stampLayer[owner] = Arrays.copyOf(stampLayer[owner], size);
+        Arrays.fill(stampLayer[owner], old, size, -1);
+    }
+}
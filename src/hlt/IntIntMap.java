@@ -0,0 +1,159 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Map from int keys to int values, for bookkeeping keyed by entity id without boxing.
+ *
+ * Entries live in parallel arrays with open addressing and linear probing; the table is kept at
+ * most half full. Removing an entry shifts the rest of its probe run back rather than leaving a
+ * tombstone, so lookups never slow down as entries come and go. Absent keys read as the value
+ * given at construction. Iteration order is the table order. Not thread-safe.
+ */
+public class IntIntMap {
+
+    /** Visits one entry */
+    public interface Visitor {
+        void visit(int key, int value);
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int missing;
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public IntIntMap() {
+        this(-1);
+    }
+
+    /**
+     * @param missing value read for keys not in the map
+     */
+    public IntIntMap(final int missing) {
+        this.missing = missing;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(final int key) {
+        return find(key) != -1;
+    }
+
+    /** @return the key's value, or the missing value */
+    public int get(final int key) {
+        final int i = find(key);
+        return i == -1 ? missing : values[i];
+    }
+
+    /** @return the key's previous value, or the missing value */
+    public int put(final int key, final int value) {
+        int i = slot(key);
+        while (used[i]) {
+            if (keys[i] == key) {
+                final int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) rehash(keys.length * 2);
+        return missing;
+    }
+
+    /** @return the key's value before it was removed, or the missing value */
+    public int remove(final int key) {
+        final int i = find(key);
+        if (i == -1) return missing;
+        final int previous = values[i];
+        removeAt(i);
+        return previous;
+    }
+
+    /** Linear in the capacity */
+    public boolean containsValue(final int value) {
+        for (int i = 0; i < keys.length; ++i) {
+            if (used[i] && values[i] == value) return true;
+        }
+        return false;
+    }
+
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public void forEach(final Visitor visitor) {
+        for (int i = 0; i < keys.length; ++i) {
+            if (used[i]) visitor.visit(keys[i], values[i]);
+        }
+    }
+
+    private int find(final int key) {
+        int i = slot(key);
+        while (used[i]) {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Empty the slot, moving back every later entry of the run that would no longer be found
+    private void removeAt(int hole) {
+        used[hole] = false;
+        --size;
+        int i = (hole + 1) & mask;
+        while (used[i]) {
+            final int home = slot(keys[i]);
+            // The entry can fill the hole if its home is not cyclically in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                used[hole] = true;
+                used[i] = false;
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private int slot(final int key) {
+        return (key * 0x9E3779B9 >>> 16 ^ key) & mask;
+    }
+
+    private void allocate(final int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(final int capacity) {
+        final int[] oldKeys = keys;
+        final int[] oldValues = values;
+        final boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; ++j) {
+            if (!oldUsed[j]) continue;
+            int i = slot(oldKeys[j]);
+            while (used[i]) i = (i + 1) & mask;
+            used[i] = true;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package hlt;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Map from int keys to objects, laid out like {@link IntIntMap}: open addressing with linear
+ * probing over parallel arrays, at most half full, with removal by shifting back the rest of
+ * the probe run. Absent keys read as null, and null values are not allowed. Iteration order is
+ * the table order. Not thread-safe.
+ */
+public class IntObjMap<V> {
+
+    /** Visits one entry */
+    public interface Visitor<V> {
+        void visit(int key, V value);
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] keys;
+    // null marks a free slot
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    public IntObjMap() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(final int key) {
+        return find(key) != -1;
+    }
+
+    /** @return the key's value, or null */
+    @SuppressWarnings("unchecked")
+    public V get(final int key) {
+        final int i = find(key);
+        return i == -1 ? null : (V) values[i];
+    }
+
+    /** @return the key's previous value, or null */
+    @SuppressWarnings("unchecked")
+    public V put(final int key, final V value) {
+        if (value == null) throw new NullPointerException("IntObjMap values cannot be null");
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                final V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) rehash(keys.length * 2);
+        return null;
+    }
+
+    /** @return the key's value before it was removed, or null */
+    @SuppressWarnings("unchecked")
+    public V remove(final int key) {
+        final int i = find(key);
+        if (i == -1) return null;
+        final V previous = (V) values[i];
+        removeAt(i);
+        return previous;
+    }
+
+    /**
+     * Remove every entry whose value matches.
+     * @return true if any entry was removed
+     */
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(final Predicate<? super V> filter) {
+        final int before = size;
+        for (int i = 0; i < values.length; ++i) {
+            // An entry shifted back into this slot has not been tested yet
+            while (values[i] != null && filter.test((V) values[i])) removeAt(i);
+        }
+        return size != before;
+    }
+
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(final Visitor<? super V> visitor) {
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] != null) visitor.visit(keys[i], (V) values[i]);
+        }
+    }
+
+    private int find(final int key) {
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Empty the slot, moving back every later entry of the run that would no longer be found
+    private void removeAt(int hole) {
+        values[hole] = null;
+        --size;
+        int i = (hole + 1) & mask;
+        while (values[i] != null) {
+            final int home = slot(keys[i]);
+            // The entry can fill the hole if its home is not cyclically in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                values[i] = null;
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private int slot(final int key) {
+        return (key * 0x9E3779B9 >>> 16 ^ key) & mask;
+    }
+
+    private void allocate(final int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(final int capacity) {
+        final int[] oldKeys = keys;
+        final Object[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; ++j) {
+            if (oldValues[j] == null) continue;
+            int i = slot(oldKeys[j]);
+            while (values[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
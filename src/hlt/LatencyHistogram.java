@@ -0,0 +1,78 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size histogram of durations in nanoseconds, with log-linear buckets: each power of two
+ * is split into {@code 2^SUB_BITS} equal buckets, so quantiles are accurate to within 1/8 of
+ * the value. Recording is a few arithmetic operations and never allocates.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Enough buckets for any non-negative long
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+    private long total;
+
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        ++counts[bucket(value)];
+        ++count;
+        total += value;
+        if (value > max) max = value;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * @param quantile in [0, 1], e.g. 0.99
+     * @return upper bound of the bucket holding the quantile, capped at the maximum; 0 if empty
+     */
+    public long getQuantile(final double quantile) {
+        if (count == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; ++b) {
+            seen += counts[b];
+            if (seen >= rank) return Math.min(upperBound(b), max);
+        }
+        return max;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+        total = 0;
+    }
+
+    private static int bucket(final long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        // Position of the highest bit, and the SUB_BITS bits below it
+        final int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        final int sub = (int) (value >>> exponent) - SUB_BUCKETS;
+        return (exponent + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int exponent = bucket / SUB_BUCKETS - 1;
+        final long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << exponent) - 1;
+    }
+}
@@ -1,29 +1,179 @@
 package hlt;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.function.Supplier;
 
+/**
+ * Asynchronous logger.
+ *
+ * Messages go into a preallocated ring buffer and are written to the file by a background
+ * thread, so logging never waits on disk I/O unless the buffer is full. Pending messages are
+ * drained when the JVM exits. Messages below the current level are dropped before they are
+ * built when passed as a {@link Supplier}.
+ */
 public class Log {
 
-    private final FileWriter file;
-    private static Log instance;
+    public enum Level { DEBUG, INFO, WARN, ERROR }
 
-    private Log(final FileWriter f) {
-        file = f;
+    private static final int CAPACITY = 1 << 12;
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+
+    private static volatile Log instance;
+    private static volatile Level level = Level.INFO;
+
+    private final Writer file;
+    private final Thread writer;
+    private final String[] ring = new String[CAPACITY];
+    // only touched by the writer thread
+    private final String[] batch = new String[CAPACITY];
+    private int head;
+    private int size;
+    // true while the writer thread is writing a batch outside the lock
+    private boolean writing;
+    private boolean closed;
+
+    private Log(final Writer f) {
+        file = new BufferedWriter(f);
+        writer = new Thread(this::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "log-drain"));
     }
 
-    static void initialize(final FileWriter f) {
+    static void initialize(final Writer f) {
         instance = new Log(f);
     }
 
+    public static void setLevel(final Level newLevel) {
+        level = newLevel;
+    }
+
+    public static boolean isEnabled(final Level messageLevel) {
+        return instance != null && messageLevel.compareTo(level) >= 0;
+    }
+
     public static void log(final String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void log(final Level messageLevel, final String message) {
+        if (isEnabled(messageLevel)) {
+            instance.enqueue(message);
+        }
+    }
+
+    /**
+     * Log a lazily built message; the supplier is not called if the level is disabled.
+     */
+    public static void log(final Level messageLevel, final Supplier<String> message) {
+        if (isEnabled(messageLevel)) {
+            instance.enqueue(message.get());
+        }
+    }
+
+    public static void debug(final Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+
+    /**
+     * Block until every message logged so far has been written out.
+     */
+    public static void flush() {
+        final Log log = instance;
+        if (log != null) log.awaitDrained();
+    }
+
+    private synchronized void enqueue(final String message) {
+        while (size == CAPACITY && !closed) {
+            // Buffer full: wait for the writer rather than lose messages
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (closed) return;
+        ring[(head + size) & (CAPACITY - 1)] = message;
+        ++size;
+        if (size == 1) notifyAll();
+    }
+
+    private void drainLoop() {
+        while (true) {
+            final int count;
+            synchronized (this) {
+                while (size == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (size == 0) break;
+                count = size;
+                for (int i = 0; i < count; ++i) {
+                    final int index = (head + i) & (CAPACITY - 1);
+                    batch[i] = ring[index];
+                    ring[index] = null;
+                }
+                head = (head + count) & (CAPACITY - 1);
+                size = 0;
+                writing = true;
+            }
+            write(count);
+            synchronized (this) {
+                writing = false;
+                // wake producers waiting for space and callers of flush()
+                notifyAll();
+            }
+        }
+        // Closed and drained; the file is only closed here, once no write can still be in flight
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void write(final int count) {
         try {
-            instance.file.write(message);
-            instance.file.write('\n');
-            instance.file.flush();
+            for (int i = 0; i < count; ++i) {
+                file.write(batch[i]);
+                file.write('\n');
+                batch[i] = null;
+            }
+            file.flush();
         }
         catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    private synchronized void awaitDrained() {
+        // The writer notifies after each batch; loop until nothing is pending or in flight
+        while ((size > 0 || writing) && writer.isAlive()) {
+            try {
+                wait(CLOSE_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        // The writer closes the file once it has drained what is pending
+        try {
+            writer.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
 }
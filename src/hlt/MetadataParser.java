@@ -33,7 +33,7 @@ public class MetadataParser {
         return new Ship(owner, id, xPos, yPos, health, dockingStatus, dockedPlanet, dockingProgress, weaponCooldown);
     }
 
-    public static Planet newPlanetFromMetadata(final List<Integer> dockedShips, final Metadata metadata) {
+    public static Planet newPlanetFromMetadata(final Metadata metadata) {
         final int id = Integer.parseInt(metadata.pop());
         final double xPos = Double.parseDouble(metadata.pop());
         final double yPos = Double.parseDouble(metadata.pop());
@@ -54,8 +54,9 @@ public class MetadataParser {
         }
 
         final int dockedShipCount = Integer.parseInt(metadata.pop());
+        final int[] dockedShips = new int[dockedShipCount];
         for (int i = 0; i < dockedShipCount; ++i) {
-            dockedShips.add(Integer.parseInt(metadata.pop()));
+            dockedShips[i] = Integer.parseInt(metadata.pop());
         }
 
         return new Planet(owner, id, xPos, yPos, health, radius, dockingSpots,
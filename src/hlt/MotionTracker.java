@@ -0,0 +1,146 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Tracks every ship's recent positions across turns and estimates its velocity, since the
+ * engine always reports velocities as zero.
+ *
+ * Ships are keyed by owner and id, each with a ring of its last {@link #HISTORY} positions.
+ * The velocity is the mean displacement per turn over the last {@link #VELOCITY_TURNS} turns,
+ * computed once per update, so predictions are O(1). A ship's history restarts when it spawns
+ * or reappears after a missed frame, and ships in any docking state are at rest.
+ * Updating costs O(ships) per turn; storage grows only when a higher ship id is seen.
+ */
+public class MotionTracker {
+
+    /** Positions kept per ship */
+    public static final int HISTORY = 4;
+    /** Turns of displacement averaged into the velocity */
+    public static final int VELOCITY_TURNS = 2;
+    /** Intercepts further ahead than this are not looked for */
+    public static final int MAX_INTERCEPT_TURNS = 10;
+    private static final int INITIAL_IDS = 64;
+    // Turn stamp of records never seen
+    private static final int NEVER = Integer.MIN_VALUE;
+
+    // Per owner, by id: positions ring (id * HISTORY + turn % HISTORY), positions recorded, last turn seen
+    private final double[][] xs = new double[Constants.MAX_PLAYERS][INITIAL_IDS * HISTORY];
+    private final double[][] ys = new double[Constants.MAX_PLAYERS][INITIAL_IDS * HISTORY];
+    private final int[][] recorded = new int[Constants.MAX_PLAYERS][INITIAL_IDS];
+    private final int[][] seen = new int[Constants.MAX_PLAYERS][INITIAL_IDS];
+    // Per owner, by id: estimated velocity in units per turn
+    private final double[][] vxs = new double[Constants.MAX_PLAYERS][INITIAL_IDS];
+    private final double[][] vys = new double[Constants.MAX_PLAYERS][INITIAL_IDS];
+
+    /**
+     * Start tracking from the map's current frame and follow every map update.
+     */
+    public MotionTracker(final GameMap map) {
+        for (int owner = 0; owner < Constants.MAX_PLAYERS; ++owner) {
+            Arrays.fill(seen[owner], NEVER);
+        }
+        update(map.getWorld());
+        map.addListener((updated, delta) -> update(updated.getWorld()));
+    }
+
+    private void update(final WorldState world) {
+        final int turn = world.getTurn();
+        for (int slot = 0; slot < world.getShipCount(); ++slot) {
+            final int owner = world.getShipOwner(slot);
+            final int id = world.getShipId(slot);
+            ensureShipRecords(owner, id);
+            if (seen[owner][id] != turn - 1) recorded[owner][id] = 0;
+            seen[owner][id] = turn;
+            final int n = recorded[owner][id];
+            final int head = id * HISTORY + n % HISTORY;
+            xs[owner][head] = world.getShipX(slot);
+            ys[owner][head] = world.getShipY(slot);
+            recorded[owner][id] = n + 1;
+
+            // Mean displacement over the turns available, up to VELOCITY_TURNS
+            final int turns = Math.min(n, VELOCITY_TURNS);
+            if (turns == 0 || !world.isShipUndocked(slot)) {
+                vxs[owner][id] = 0;
+                vys[owner][id] = 0;
+            } else {
+                final int tail = id * HISTORY + (n - turns) % HISTORY;
+                vxs[owner][id] = (xs[owner][head] - xs[owner][tail]) / turns;
+                vys[owner][id] = (ys[owner][head] - ys[owner][tail]) / turns;
+            }
+        }
+    }
+
+    /** Estimated velocity, in units per turn; 0 for ships not tracked */
+    public double getVelocityX(final int owner, final int id) {
+        return id < vxs[owner].length ? vxs[owner][id] : 0;
+    }
+
+    public double getVelocityY(final int owner, final int id) {
+        return id < vys[owner].length ? vys[owner][id] : 0;
+    }
+
+    public double getSpeed(final int owner, final int id) {
+        return Math.hypot(getVelocityX(owner, id), getVelocityY(owner, id));
+    }
+
+    /** Heading in radians; 0 for ships at rest */
+    public double getHeading(final int owner, final int id) {
+        return Math.atan2(getVelocityY(owner, id), getVelocityX(owner, id));
+    }
+
+    /**
+     * @return where the ship will be after the given number of turns if it keeps its velocity
+     */
+    public Position predict(final Ship ship, final double turns) {
+        return new Position(ship.getXPos() + getVelocityX(ship.getOwner(), ship.getId()) * turns,
+                ship.getYPos() + getVelocityY(ship.getOwner(), ship.getId()) * turns);
+    }
+
+    /**
+     * Find the earliest point at which a pursuer moving at the given speed can meet the ship,
+     * assuming the ship keeps its velocity.
+     * @return the meeting point; the ship's position if it is at rest; null if the ship cannot be
+     * caught within {@link #MAX_INTERCEPT_TURNS}
+     */
+    public Position intercept(final Ship ship, final double pursuerX, final double pursuerY, final double speed) {
+        final double vx = getVelocityX(ship.getOwner(), ship.getId());
+        final double vy = getVelocityY(ship.getOwner(), ship.getId());
+        if (vx == 0 && vy == 0) return new Position(ship.getXPos(), ship.getYPos());
+        // |offset + v t| = speed t, for the smallest t >= 0
+        final double ox = ship.getXPos() - pursuerX;
+        final double oy = ship.getYPos() - pursuerY;
+        final double a = vx * vx + vy * vy - speed * speed;
+        final double b = 2 * (ox * vx + oy * vy);
+        final double c = ox * ox + oy * oy;
+        final double t;
+        if (Math.abs(a) < 1e-9) {
+            // Same speed: only catches up if the ship is coming towards the pursuer
+            if (b >= 0) return null;
+            t = -c / b;
+        } else {
+            final double discriminant = b * b - 4 * a * c;
+            if (discriminant < 0) return null;
+            final double root = Math.sqrt(discriminant);
+            final double t1 = (-b - root) / (2 * a);
+            final double t2 = (-b + root) / (2 * a);
+            final double first = Math.min(t1, t2);
+            t = first >= 0 ? first : Math.max(t1, t2);
+        }
+        if (t < 0 || t > MAX_INTERCEPT_TURNS) return null;
+        return new Position(ship.getXPos() + vx * t, ship.getYPos() + vy * t);
+    }
+
+    private void ensureShipRecords(final int owner, final int id) {
+        if (id < seen[owner].length) return;
+        final int size = Math.max(id + 1, seen[owner].length * 2);
+        final int old = seen[owner].length;
+        xs[owner] = Arrays.copyOf(xs[owner], size * HISTORY);
+        ys[owner] = Arrays.copyOf(ys[owner], size * HISTORY);
+        recorded[owner] = Arrays.copyOf(recorded[owner], size);
+        seen[owner] = Arrays.copyOf(seen[owner], size);
+        Arrays.fill(seen[owner], old, size, NEVER);
+        vxs[owner] = Arrays.copyOf(vxs[owner], size);
+        vys[owner] = Arrays.copyOf(vys[owner], size);
+    }
+}
@@ -0,0 +1,98 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Primitive list of moves for one turn.
+ *
+ * Lets the planner emit commands without allocating a {@link Move} per ship. Cleared and
+ * refilled every turn; storage only grows.
+ */
+public class MoveBatch {
+
+    private Move.MoveType[] types = new Move.MoveType[64];
+    private int[] shipIds = new int[64];
+    // thrust for Thrust moves, planet id for Dock moves
+    private int[] firstArgs = new int[64];
+    // angle in degrees for Thrust moves
+    private int[] secondArgs = new int[64];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void addThrust(final int shipId, final int thrust, final int angleDeg) {
+        add(Move.MoveType.Thrust, shipId, thrust, angleDeg);
+    }
+
+    public void addDock(final int shipId, final int planetId) {
+        add(Move.MoveType.Dock, shipId, planetId, 0);
+    }
+
+    public void addUndock(final int shipId) {
+        add(Move.MoveType.Undock, shipId, 0, 0);
+    }
+
+    /**
+     * Append an existing Move object to the batch.
+     */
+    public void add(final Move move) {
+        final int shipId = move.getShip().getId();
+        switch (move.getType()) {
+            case Noop:
+                break;
+            case Undock:
+                addUndock(shipId);
+                break;
+            case Dock:
+                addDock(shipId, (int) ((DockMove) move).getDestinationId());
+                break;
+            case Thrust:
+                addThrust(shipId, ((ThrustMove) move).getThrust(), ((ThrustMove) move).getAngle());
+                break;
+        }
+    }
+
+    public Move.MoveType getType(final int index) {
+        return types[index];
+    }
+
+    public int getShipId(final int index) {
+        return shipIds[index];
+    }
+
+    /** Thrust of a Thrust move */
+    public int getThrust(final int index) {
+        return firstArgs[index];
+    }
+
+    /** Angle in degrees of a Thrust move */
+    public int getAngle(final int index) {
+        return secondArgs[index];
+    }
+
+    /** Target planet of a Dock move */
+    public int getPlanetId(final int index) {
+        return firstArgs[index];
+    }
+
+    private void add(final Move.MoveType type, final int shipId, final int first, final int second) {
+        if (size == shipIds.length) {
+            final int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            shipIds = Arrays.copyOf(shipIds, capacity);
+            firstArgs = Arrays.copyOf(firstArgs, capacity);
+            secondArgs = Arrays.copyOf(secondArgs, capacity);
+        }
+        types[size] = type;
+        shipIds[size] = shipId;
+        firstArgs[size] = first;
+        secondArgs[size] = second;
+        ++size;
+    }
+}
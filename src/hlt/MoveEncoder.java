@@ -0,0 +1,176 @@
+package hlt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes commands for the engine into a reusable byte buffer.
+ *
+ * A turn's commands are appended with the {@code write*} methods and sent with a single
+ * channel write by {@link #flushLine()}. Integers are formatted by hand so that encoding
+ * allocates nothing.
+ */
+public class MoveEncoder {
+
+    private static final byte UNDOCK_KEY = 'u';
+    private static final byte DOCK_KEY = 'd';
+    private static final byte THRUST_KEY = 't';
+    // Longest int, Integer.MIN_VALUE with its sign
+    private static final int MAX_INT_CHARS = 11;
+
+    private final WritableByteChannel channel;
+    private byte[] bytes = new byte[1 << 12];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int length;
+
+    public MoveEncoder(final WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public void writeThrust(final int shipId, final int thrust, final int angleDeg) {
+        // Key and space, then each int followed by a space
+        ensureCapacity(2 + 3 * (MAX_INT_CHARS + 1));
+        writeByte(THRUST_KEY);
+        writeByte((byte) ' ');
+        writeInt(shipId);
+        writeByte((byte) ' ');
+        writeInt(thrust);
+        writeByte((byte) ' ');
+        writeInt(angleDeg);
+        writeByte((byte) ' ');
+    }
+
+    public void writeDock(final int shipId, final int planetId) {
+        ensureCapacity(2 + 2 * (MAX_INT_CHARS + 1));
+        writeByte(DOCK_KEY);
+        writeByte((byte) ' ');
+        writeInt(shipId);
+        writeByte((byte) ' ');
+        writeInt(planetId);
+        writeByte((byte) ' ');
+    }
+
+    public void writeUndock(final int shipId) {
+        ensureCapacity(2 + MAX_INT_CHARS + 1);
+        writeByte(UNDOCK_KEY);
+        writeByte((byte) ' ');
+        writeInt(shipId);
+        writeByte((byte) ' ');
+    }
+
+    public void write(final Move move) {
+        switch (move.getType()) {
+            case Noop:
+                break;
+            case Undock:
+                writeUndock(move.getShip().getId());
+                break;
+            case Dock:
+                writeDock(move.getShip().getId(), (int) ((DockMove) move).getDestinationId());
+                break;
+            case Thrust:
+                writeThrust(move.getShip().getId(), ((ThrustMove) move).getThrust(), ((ThrustMove) move).getAngle());
+                break;
+        }
+    }
+
+    public void write(final Iterable<Move> moves) {
+        for (final Move move : moves) {
+            write(move);
+        }
+    }
+
+    public void write(final MoveBatch batch) {
+        for (int i = 0; i < batch.size(); ++i) {
+            switch (batch.getType(i)) {
+                case Noop:
+                    break;
+                case Undock:
+                    writeUndock(batch.getShipId(i));
+                    break;
+                case Dock:
+                    writeDock(batch.getShipId(i), batch.getPlanetId(i));
+                    break;
+                case Thrust:
+                    writeThrust(batch.getShipId(i), batch.getThrust(i), batch.getAngle(i));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Append raw text, e.g. the bot name sent before the first turn.
+     */
+    public void write(final String text) {
+        final byte[] encoded = text.getBytes(StandardCharsets.US_ASCII);
+        ensureCapacity(encoded.length);
+        System.arraycopy(encoded, 0, bytes, length, encoded.length);
+        length += encoded.length;
+    }
+
+    /**
+     * @return buffer holding the line written so far, in its first {@link #getLineLength()} bytes;
+     * valid until the next write
+     */
+    public byte[] getLineBytes() {
+        return bytes;
+    }
+
+    public int getLineLength() {
+        return length;
+    }
+
+    /**
+     * Discard the line written so far without sending it.
+     */
+    public void clear() {
+        length = 0;
+    }
+
+    /**
+     * Terminate the current line and send everything written so far in one write.
+     */
+    public void flushLine() throws IOException {
+        ensureCapacity(1);
+        writeByte((byte) '\n');
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        length = 0;
+    }
+
+    private void writeByte(final byte b) {
+        bytes[length++] = b;
+    }
+
+    private void writeInt(final int value) {
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                write(Integer.toString(value));
+                return;
+            }
+            writeByte((byte) '-');
+            writeInt(-value);
+            return;
+        }
+        int digits = 1;
+        for (int rest = value / 10; rest != 0; rest /= 10) ++digits;
+        int end = length + digits;
+        for (int rest = value; end > length; rest /= 10) {
+            bytes[--end] = (byte) ('0' + rest % 10);
+        }
+        length += digits;
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (length + extra <= bytes.length) return;
+        final byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+        System.arraycopy(bytes, 0, grown, 0, length);
+        bytes = grown;
+        buffer = ByteBuffer.wrap(bytes);
+    }
+}
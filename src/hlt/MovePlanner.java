@@ -0,0 +1,108 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Reserves the swept path of each of our ships for the current turn, so that ships planned
+ * later can avoid colliding with ships planned earlier at any point during the move.
+ *
+ * At the start of a turn every one of our ships holds a stationary reservation at its current
+ * position. Committing a thrust replaces the ship's reservation with its path for the turn.
+ * A candidate move is clear if, moving in a straight line over the turn, the ship never comes
+ * within collision distance of any other reservation moving along its own path.
+ */
+public class MovePlanner {
+
+    // Centres closer than this collide, with the same safety margin Navigation uses
+    private static final double COLLISION_DISTANCE =
+            2 * Constants.SHIP_RADIUS + (Constants.FORECAST_FUDGE_FACTOR - Constants.SHIP_RADIUS);
+    // Two ships can only meet during a turn if they start within this distance
+    private static final double REACH = 2 * Constants.MAX_SPEED + COLLISION_DISTANCE;
+
+    private final GameMap gameMap;
+    // Per ship slot: start position and displacement over the turn
+    private double[] startX = new double[64];
+    private double[] startY = new double[64];
+    private double[] moveX = new double[64];
+    private double[] moveY = new double[64];
+    private int[] found = new int[64];
+
+    public MovePlanner(final GameMap gameMap) {
+        this.gameMap = gameMap;
+    }
+
+    /**
+     * Reset reservations for a new turn; must be called after every map update.
+     */
+    public void begin() {
+        final WorldState world = gameMap.getWorld();
+        final int count = world.getShipCount();
+        if (startX.length < count) {
+            final int size = Math.max(count, startX.length * 2);
+            startX = new double[size];
+            startY = new double[size];
+            moveX = new double[size];
+            moveY = new double[size];
+            found = new int[size];
+        }
+        System.arraycopy(world.shipXs(), 0, startX, 0, count);
+        System.arraycopy(world.shipYs(), 0, startY, 0, count);
+        Arrays.fill(moveX, 0, count, 0);
+        Arrays.fill(moveY, 0, count, 0);
+    }
+
+    /**
+     * Replace the ship's reservation with the path of the given move.
+     */
+    public void commit(final Move move) {
+        final int slot = slotOf(move.getShip());
+        if (slot == -1) return;
+        if (move.getType() == Move.MoveType.Thrust) {
+            final ThrustMove thrust = (ThrustMove) move;
+            moveX[slot] = thrust.getThrust() * FastMath.cosDeg(thrust.getAngle());
+            moveY[slot] = thrust.getThrust() * FastMath.sinDeg(thrust.getAngle());
+        } else {
+            moveX[slot] = 0;
+            moveY[slot] = 0;
+        }
+    }
+
+    /**
+     * @return true if the ship can thrust this way without meeting any other reservation
+     */
+    public boolean isClear(final Ship ship, final int thrust, final int angleDeg) {
+        final int self = slotOf(ship);
+        final double vx = thrust * FastMath.cosDeg(angleDeg);
+        final double vy = thrust * FastMath.sinDeg(angleDeg);
+        final double x = ship.getXPos();
+        final double y = ship.getYPos();
+
+        final WorldState world = gameMap.getWorld();
+        final int nearby = gameMap.getShipIndex().queryCircle(x, y, REACH, found);
+        for (int i = 0; i < nearby; ++i) {
+            final int slot = found[i];
+            if (slot == self || world.getShipOwner(slot) != gameMap.getMyPlayerId()) continue;
+            if (sweptCollision(startX[slot] - x, startY[slot] - y, moveX[slot] - vx, moveY[slot] - vy)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether two ships with relative position p and relative displacement v over the turn come
+     * within collision distance for some t in [0, 1].
+     */
+    private static boolean sweptCollision(final double px, final double py, final double vx, final double vy) {
+        final double speedSq = vx * vx + vy * vy;
+        double t = speedSq == 0 ? 0 : -(px * vx + py * vy) / speedSq;
+        t = t < 0 ? 0 : (t > 1 ? 1 : t);
+        final double cx = px + vx * t;
+        final double cy = py + vy * t;
+        return cx * cx + cy * cy <= COLLISION_DISTANCE * COLLISION_DISTANCE;
+    }
+
+    private int slotOf(final Ship ship) {
+        return gameMap.getWorld().getShipSlot(ship.getOwner(), ship.getId());
+    }
+}
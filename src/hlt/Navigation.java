@@ -1,9 +1,24 @@
 package hlt;
 
+import java.util.Arrays;
+
 public class Navigation {
 
+    // Per-thread scratch space for the obstacle sweep
+    private static final ThreadLocal<Sweep> sweeps = ThreadLocal.withInitial(Sweep::new);
+
+    public static ThrustMove navigateShipToDock(
+            final GameMap gameMap,
+            final Ship ship,
+            final Entity dockTarget,
+            final int maxThrust)
+    {
+        return navigateShipToDock(gameMap, null, ship, dockTarget, maxThrust);
+    }
+
     public static ThrustMove navigateShipToDock(
             final GameMap gameMap,
+            final MovePlanner planner,
             final Ship ship,
             final Entity dockTarget,
             final int maxThrust)
@@ -13,11 +28,39 @@ public class Navigation {
         final double angularStepRad = Math.PI/180.0;
         final Position targetPos = ship.getClosestPoint(dockTarget);
 
-        return navigateShipTowardsTarget(gameMap, ship, targetPos, maxThrust, avoidObstacles, maxCorrections, angularStepRad);
+        return navigateShipTowardsTarget(gameMap, planner, ship, targetPos, maxThrust, avoidObstacles, maxCorrections, angularStepRad);
+    }
+
+    public static ThrustMove navigateShipTowardsTarget(
+            final GameMap gameMap,
+            final Ship ship,
+            final Position targetPos,
+            final int maxThrust,
+            final boolean avoidObstacles,
+            final int maxCorrections,
+            final double angularStepRad)
+    {
+        return navigateShipTowardsTarget(gameMap, null, ship, targetPos, maxThrust, avoidObstacles,
+                maxCorrections, angularStepRad);
     }
 
+    /**
+     * Find a heading towards the target that is clear of planets and our own ships.
+     *
+     * Obstacles are gathered once and turned into blocked angular intervals, then candidate
+     * headings are tried alternately on both sides of the direct heading, in steps of
+     * {@code angularStepRad}, until one is clear. Planets are checked along the whole path
+     * to the target. Our ships are checked against the planner's reservations when a planner
+     * is given, otherwise against their current positions along this turn's travel.
+     *
+     * @param planner reservations of ships already moved this turn, or null
+     * @param maxCorrections number of candidate headings to try on each side, counting the direct
+     * one, so that each side reaches {@code maxCorrections - 1} steps as a one-sided search would
+     * @return the move, or null if every candidate heading is blocked
+     */
     public static ThrustMove navigateShipTowardsTarget(
             final GameMap gameMap,
+            final MovePlanner planner,
             final Ship ship,
             final Position targetPos,
             final int maxThrust,
@@ -30,15 +73,6 @@ public class Navigation {
         }
 
         final double distance = ship.getDistanceTo(targetPos);
-        final double angleRad = ship.orientTowardsInRad(targetPos);
-
-        if (avoidObstacles && !gameMap.objectsBetween(ship, targetPos).isEmpty()) {
-            final double newTargetDx = Math.cos(angleRad + angularStepRad) * distance;
-            final double newTargetDy = Math.sin(angleRad + angularStepRad) * distance;
-            final Position newTarget = new Position(ship.getXPos() + newTargetDx, ship.getYPos() + newTargetDy);
-
-            return navigateShipTowardsTarget(gameMap, ship, newTarget, maxThrust, true, (maxCorrections-1), angularStepRad);
-        }
 
         final int thrust;
         if (distance < maxThrust) {
@@ -49,8 +83,113 @@ public class Navigation {
             thrust = maxThrust;
         }
 
-        final int angleDeg = Util.angleRadToDegClipped(angleRad);
+        final int angleDeg = ship.orientTowardsInDeg(targetPos);
+        if (!avoidObstacles) {
+            return new ThrustMove(ship, angleDeg, thrust);
+        }
+
+        final Sweep sweep = sweeps.get();
+        sweep.collect(gameMap, ship, targetPos, distance, thrust, planner == null);
+
+        // Headings are whole degrees, so test exactly the headings that can be sent
+        final double stepDeg = Math.toDegrees(angularStepRad);
+        final int candidates = 2 * maxCorrections - 1;
+        for (int i = 0; i < candidates; ++i) {
+            // 0, +1, -1, +2, -2, ...
+            final int k = (i + 1) / 2;
+            final int offset = (int) Math.round(k * stepDeg);
+            final int candidate = Math.floorMod(angleDeg + ((i & 1) == 1 ? offset : -offset), 360);
+            if (!sweep.isBlocked(candidate) && (planner == null || planner.isClear(ship, thrust, candidate))) {
+                return new ThrustMove(ship, candidate, thrust);
+            }
+        }
+        return null;
+    }
 
-        return new ThrustMove(ship, angleDeg, thrust);
+    /**
+     * Blocked heading intervals around a ship, one per obstacle.
+     */
+    private static final class Sweep {
+        // Small margin so that headings grazing an obstacle count as blocked
+        private static final double EPSILON = 1e-9;
+
+        private double[] centers = new double[64];
+        private double[] halfWidths = new double[64];
+        private int count;
+        private int[] found = new int[64];
+
+        void collect(final GameMap gameMap, final Ship ship, final Position target,
+                     final double distance, final int thrust, final boolean ships) {
+            count = 0;
+            final WorldState world = gameMap.getWorld();
+            final double x = ship.getXPos();
+            final double y = ship.getYPos();
+
+            for (int slot = 0; slot < world.getPlanetCount(); ++slot) {
+                final double px = world.getPlanetX(slot);
+                final double py = world.getPlanetY(slot);
+                if (GameMap.isSameEntity(target, Planet.class, px, py)) continue;
+                add(px - x, py - y, world.getPlanetRadius(slot) + Constants.FORECAST_FUDGE_FACTOR, distance);
+            }
+
+            if (!ships) return;
+            final SpatialIndex shipIndex = gameMap.getShipIndex();
+            if (found.length < shipIndex.getCount()) found = new int[shipIndex.getCount()];
+            final int nearby = shipIndex.queryCircle(x, y, thrust + Constants.FORECAST_FUDGE_FACTOR, found);
+            for (int i = 0; i < nearby; ++i) {
+                final int slot = found[i];
+                if (world.getShipOwner(slot) != gameMap.getMyPlayerId()) continue;
+                final double sx = world.getShipX(slot);
+                final double sy = world.getShipY(slot);
+                if (GameMap.isSameEntity(ship, Ship.class, sx, sy)
+                        || GameMap.isSameEntity(target, Ship.class, sx, sy)) {
+                    continue;
+                }
+                add(sx - x, sy - y, world.getShipRadius(slot) + Constants.FORECAST_FUDGE_FACTOR, thrust);
+            }
+        }
+
+        /**
+         * Add the headings for which a path of the given length from the origin hits the circle,
+         * matching {@link Collision#segmentCircleIntersect}: circles behind the start never block.
+         */
+        private void add(final double dx, final double dy, final double radius, final double length) {
+            final double d = Math.sqrt(dx * dx + dy * dy);
+            final double halfWidth;
+            if (d <= radius) {
+                // Starting inside the circle: every heading that is not moving away is blocked
+                halfWidth = Math.PI / 2;
+            } else {
+                // Headings whose line passes within radius of the centre
+                final double tangent = Math.asin(radius / d);
+                // Headings for which the path ends before the closest approach
+                final double shortfall = length >= d ? 0 : Math.acos(length / d);
+                if (shortfall <= tangent) {
+                    halfWidth = tangent;
+                } else {
+                    // Path stops short: blocked only where the end point is inside the circle
+                    final double cos = (length * length + d * d - radius * radius) / (2 * length * d);
+                    if (length <= 0 || cos > 1) return;
+                    halfWidth = Math.acos(cos);
+                }
+            }
+            if (count == centers.length) {
+                centers = Arrays.copyOf(centers, count * 2);
+                halfWidths = Arrays.copyOf(halfWidths, count * 2);
+            }
+            centers[count] = Math.atan2(dy, dx);
+            halfWidths[count] = halfWidth + EPSILON;
+            ++count;
+        }
+
+        boolean isBlocked(final int headingDeg) {
+            final double heading = Math.toRadians(headingDeg);
+            for (int i = 0; i < count; ++i) {
+                double diff = Math.abs(heading - centers[i]) % (2 * Math.PI);
+                if (diff > Math.PI) diff = 2 * Math.PI - diff;
+                if (diff <= halfWidths[i]) return true;
+            }
+            return false;
+        }
     }
 }
@@ -1,93 +1,106 @@
 package hlt;
 
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 
 public class Networking {
 
-    private static final char UNDOCK_KEY = 'u';
-    private static final char DOCK_KEY = 'd';
-    private static final char THRUST_KEY = 't';
+    private static final MoveEncoder output = new MoveEncoder(new FileOutputStream(FileDescriptor.out).getChannel());
+    private static Recorder recorder;
+    private static TurnStats stats;
 
+    private final FrameReader input = new FrameReader(new FileInputStream(FileDescriptor.in).getChannel());
+    private final TurnScheduler scheduler = new TurnScheduler();
     private String botName;
     private int turn = 0;
 
     public static void sendMoves(final Iterable<Move> moves) {
-        final StringBuilder moveString = new StringBuilder();
-
-        for (final Move move : moves) {
-            switch (move.getType()) {
-                case Noop:
-                    continue;
-                case Undock:
-                    moveString.append(UNDOCK_KEY)
-                            .append(" ")
-                            .append(move.getShip().getId())
-                            .append(" ");
-                    break;
-                case Dock:
-                    moveString.append(DOCK_KEY)
-                            .append(" ")
-                            .append(move.getShip().getId())
-                            .append(" ")
-                            .append(((DockMove) move).getDestinationId())
-                            .append(" ");
-                    break;
-                case Thrust:
-                    moveString.append(THRUST_KEY)
-                            .append(" ")
-                            .append(move.getShip().getId())
-                            .append(" ")
-                            .append(((ThrustMove) move).getThrust())
-                            .append(" ")
-                            .append(((ThrustMove) move).getAngle())
-                            .append(" ");
-                    break;
-            }
+        final long start = System.nanoTime();
+        output.write(moves);
+        flushMoves(start);
+    }
+
+    public static void sendMoves(final MoveBatch moves) {
+        final long start = System.nanoTime();
+        output.write(moves);
+        flushMoves(start);
+    }
+
+    /**
+     * Send moves given both as objects and in primitive form as a single command line.
+     */
+    public static void sendMoves(final Iterable<Move> moves, final MoveBatch batch) {
+        final long start = System.nanoTime();
+        output.write(moves);
+        output.write(batch);
+        flushMoves(start);
+    }
+
+    private static void flushMoves(final long start) {
+        if (recorder != null) recorder.moves(output.getLineBytes(), output.getLineLength());
+        flushOutput();
+        if (stats != null) stats.movesSent(System.nanoTime() - start);
+    }
+
+    private static void flushOutput() {
+        try {
+            output.flushLine();
+        } catch (final IOException e) {
+            System.exit(1);
+            throw new RuntimeException(e);
         }
-        System.out.println(moveString);
     }
 
-    private static String readLine() {
+    private FrameReader readLine() {
         try {
-            StringBuilder builder = new StringBuilder();
-            int buffer;
-
-            for (; (buffer = System.in.read()) >= 0;) {
-                if (buffer == '\n') {
-                    break;
-                }
-                if (buffer == '\r') {
-                    // Ignore carriage return if on windows for manual testing.
-                    continue;
-                }
-                builder = builder.append((char)buffer);
+            if (!input.nextLine()) {
+                // Engine closed our input; the game is over
+                System.exit(0);
             }
-            return builder.toString();
-        } catch(final Exception e) {
+            if (recorder != null) recorder.frame(input.getLineBytes(), input.getLineStart(), input.getLineLength());
+            return input;
+        } catch(final IOException e) {
             System.exit(1);
             throw new RuntimeException(e);
         }
     }
 
-    private static Metadata readLineIntoMetadata() {
-        return new Metadata(readLine().trim().split(" "));
+    /**
+     * @return the scheduler whose turn clock is started as each frame arrives
+     */
+    public TurnScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Record the game: every line received, the seed and every turn's commands and timing.
+     * Call before {@link #initialize}.
+     * @param seed the seed the bot was given, stored so that the game can be replayed
+     */
+    public static void record(final OutputStream out, final long seed) throws IOException {
+        recorder = new Recorder(out, seed);
     }
 
     public GameMap initialize(final String botName) {
         this.botName = botName;
 
-        final int myId = Integer.parseInt(readLine());
+        final int myId = readLine().nextInt();
         try {
             Log.initialize(new FileWriter(String.format("%d_%s.log", myId, botName)));
         }
         catch (IOException e) {
             e.printStackTrace();
         }
+        writeStatsAtExit(String.format("%d_%s.stats.jsonl", myId, botName));
 
-        final Metadata inputStringMapSize = readLineIntoMetadata();
-        final int width = Integer.parseInt(inputStringMapSize.pop());
-        final int height = Integer.parseInt(inputStringMapSize.pop());
+        final FrameReader inputMapSize = readLine();
+        final int width = inputMapSize.nextInt();
+        final int height = inputMapSize.nextInt();
 
         final GameMap gameMap = new GameMap(width, height, myId);
         updateMap(gameMap);
@@ -97,10 +110,14 @@ public class Networking {
 
     public void updateMap(final GameMap map) {
         if (turn == 1) {
-            System.out.println(botName);
+            output.write(botName);
+            flushOutput();
         }
 
-        final Metadata inputStringMetadata = readLineIntoMetadata();
+        final FrameReader frame = readLine();
+        scheduler.startTurn();
+        // From the frame's first bytes, not from when we started waiting for the engine
+        if (stats != null) stats.frameRead(scheduler.getTurnStart() - frame.getLineArrivalNanos());
 
         if (turn == 0) {
             Log.log("--- PRE-GAME ---");
@@ -109,6 +126,37 @@ public class Networking {
         }
         ++turn;
 
-        map.updateMap(inputStringMetadata);
+        map.updateMap(frame);
+        if (stats != null) {
+            final WorldState world = map.getWorld();
+            int ships = 0;
+            for (int i = 0; i < world.getPlayerCount(); ++i) {
+                if (world.getPlayerId(i) == map.getMyPlayerId()) ships = world.getPlayerShipCount(i);
+            }
+            stats.frameParsed(System.nanoTime() - scheduler.getTurnStart(), ships, world.getShipCount());
+        }
+    }
+
+    /**
+     * @return timings of every turn so far, or null before {@link #initialize}
+     */
+    public static TurnStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Collect turn timings, and write them to the file when the game ends: the engine closing
+     * our input exits the JVM, so the file is written from a shutdown hook.
+     */
+    private void writeStatsAtExit(final String fileName) {
+        final TurnStats turnStats = new TurnStats(scheduler);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try (final Writer out = new FileWriter(fileName)) {
+                turnStats.write(out);
+            } catch (final IOException e) {
+                // Nothing left to do at exit
+            }
+        }, "stats-writer"));
+        stats = turnStats;
     }
 }
@@ -1,25 +1,25 @@
 package hlt;
 
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 public class Planet extends Entity {
 
     private final int remainingProduction;
     private final int currentProduction;
     private final int dockingSpots;
-    private final List<Integer> dockedShips;
+    // Ids of the ships docked or docking, owned by the planet's owner
+    private final int[] dockedShips;
 
     public Planet(final int owner, final int id, final double xPos, final double yPos, final int health,
                   final double radius, final int dockingSpots, final int currentProduction,
-                  final int remainingProduction, final List<Integer> dockedShips) {
+                  final int remainingProduction, final int[] dockedShips) {
 
         super(owner, id, xPos, yPos, health, radius);
 
         this.dockingSpots = dockingSpots;
         this.currentProduction = currentProduction;
         this.remainingProduction = remainingProduction;
-        this.dockedShips = Collections.unmodifiableList(dockedShips);
+        this.dockedShips = dockedShips;
     }
 
     public int getRemainingProduction() {
@@ -34,12 +34,17 @@ public class Planet extends Entity {
         return dockingSpots;
     }
 
-    public List<Integer> getDockedShips() {
-        return dockedShips;
+    public int getDockedCount() {
+        return dockedShips.length;
+    }
+
+    /** Id of the index-th docked ship, for index in [0, {@link #getDockedCount()}) */
+    public int getDockedShip(final int index) {
+        return dockedShips[index];
     }
 
     public boolean isFull() {
-        return dockedShips.size() == dockingSpots;
+        return dockedShips.length == dockingSpots;
     }
 
     public boolean isOwned() {
@@ -53,7 +58,7 @@ public class Planet extends Entity {
                 ", remainingProduction=" + remainingProduction +
                 ", currentProduction=" + currentProduction +
                 ", dockingSpots=" + dockingSpots +
-                ", dockedShips=" + dockedShips +
+                ", dockedShips=" + Arrays.toString(dockedShips) +
                 "]";
     }
 }
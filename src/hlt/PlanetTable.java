@@ -0,0 +1,208 @@
+package hlt;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Planet geometry that never changes during a game, computed once from the first frame:
+ * the planet to planet distance matrix, each planet's other planets sorted by distance
+ * ("rings"), and a ring of docking approach points around each planet.
+ *
+ * Nearest-planet queries start from the planet closest to the query point and walk its ring.
+ * By the triangle inequality a planet q is at least {@code dist(anchor, q) - dist(point, anchor)}
+ * from the point, so the walk stops as soon as that bound exceeds the k-th best distance found,
+ * usually after a handful of planets. Planets destroyed since the table was built are skipped.
+ */
+public class PlanetTable {
+
+    /** Docking approach points per planet, evenly spaced */
+    public static final int DOCK_POINTS = 72;
+
+    private final GameMap gameMap;
+    private final int count;
+    // Per table index: planet id, centre and radius at game start
+    private final int[] ids;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] radii;
+    // planet id -> table index, -1 if none
+    private final int[] indexById;
+    // distances[a * count + b]: centre to centre distance between planets a and b
+    private final double[] distances;
+    // rings[a * count + i]: the i-th closest planet to planet a, a itself first
+    private final int[] rings;
+    // dockXs[a * DOCK_POINTS + k]: point MIN_DISTANCE_FOR_CLOSEST_POINT off the surface of a, at angle k
+    private final double[] dockXs;
+    private final double[] dockYs;
+
+    private static final ThreadLocal<double[]> scratch = ThreadLocal.withInitial(() -> new double[16]);
+
+    public PlanetTable(final GameMap gameMap) {
+        this.gameMap = gameMap;
+        final WorldState world = gameMap.getWorld();
+        count = world.getPlanetCount();
+        ids = new int[count];
+        xs = new double[count];
+        ys = new double[count];
+        radii = new double[count];
+        int maxId = -1;
+        for (int slot = 0; slot < count; ++slot) {
+            ids[slot] = world.getPlanetId(slot);
+            xs[slot] = world.getPlanetX(slot);
+            ys[slot] = world.getPlanetY(slot);
+            radii[slot] = world.getPlanetRadius(slot);
+            maxId = Math.max(maxId, ids[slot]);
+        }
+        indexById = new int[maxId + 1];
+        Arrays.fill(indexById, -1);
+        for (int a = 0; a < count; ++a) indexById[ids[a]] = a;
+
+        distances = new double[count * count];
+        for (int a = 0; a < count; ++a) {
+            for (int b = a + 1; b < count; ++b) {
+                final double dx = xs[a] - xs[b];
+                final double dy = ys[a] - ys[b];
+                final double distance = Math.sqrt(dx * dx + dy * dy);
+                distances[a * count + b] = distance;
+                distances[b * count + a] = distance;
+            }
+        }
+
+        rings = new int[count * count];
+        final Integer[] order = new Integer[count];
+        for (int a = 0; a < count; ++a) {
+            for (int b = 0; b < count; ++b) order[b] = b;
+            final int row = a * count;
+            final int self = a;
+            // ties by index so that a always comes first in its own ring
+            Arrays.sort(order, (p, q) -> p.equals(q) ? 0 : distances[row + p] != distances[row + q]
+                    ? Double.compare(distances[row + p], distances[row + q])
+                    : (p == self ? -1 : (q == self ? 1 : Integer.compare(p, q))));
+            for (int i = 0; i < count; ++i) rings[row + i] = order[i];
+        }
+
+        dockXs = new double[count * DOCK_POINTS];
+        dockYs = new double[count * DOCK_POINTS];
+        for (int a = 0; a < count; ++a) {
+            final double radius = radii[a] + Constants.MIN_DISTANCE_FOR_CLOSEST_POINT;
+            for (int k = 0; k < DOCK_POINTS; ++k) {
+                final double angle = 2 * Math.PI * k / DOCK_POINTS;
+                dockXs[a * DOCK_POINTS + k] = xs[a] + radius * Math.cos(angle);
+                dockYs[a * DOCK_POINTS + k] = ys[a] + radius * Math.sin(angle);
+            }
+        }
+    }
+
+    /** Number of planets at game start */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return distance between the centres of two planets, by id
+     */
+    public double getDistance(final int planetIdA, final int planetIdB) {
+        return distances[indexById[planetIdA] * count + indexById[planetIdB]];
+    }
+
+    /**
+     * @return the docking approach point of the planet closest to the given position; like
+     * {@link Position#getClosestPoint} but snapped to one of {@link #DOCK_POINTS} angles
+     */
+    public Position closestDockPoint(final int planetId, final double x, final double y) {
+        final int a = indexById[planetId];
+        final double angle = Math.atan2(y - ys[a], x - xs[a]);
+        final int k = Math.floorMod((int) Math.round(angle * DOCK_POINTS / (2 * Math.PI)), DOCK_POINTS);
+        return new Position(dockXs[a * DOCK_POINTS + k], dockYs[a * DOCK_POINTS + k]);
+    }
+
+    /** The k-th docking approach point of the planet, counter-clockwise from the positive x axis */
+    public double getDockPointX(final int planetId, final int k) {
+        return dockXs[indexById[planetId] * DOCK_POINTS + k];
+    }
+
+    public double getDockPointY(final int planetId, final int k) {
+        return dockYs[indexById[planetId] * DOCK_POINTS + k];
+    }
+
+    /**
+     * Find the planet whose centre is closest to a point.
+     * @param filter planet id filter, or null to accept every planet still in the game
+     * @return the planet id, or -1 if none qualifies
+     */
+    public int nearest(final double x, final double y, final IntPredicate filter) {
+        if (count == 0) return -1;
+        // The k = 1 case of the search below, without an output array
+        final WorldState world = gameMap.getWorld();
+        final int anchor = anchor(x, y);
+        final double anchorDistance = distance(anchor, x, y);
+        final int row = anchor * count;
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; ++i) {
+            final int q = rings[row + i];
+            if (distances[row + q] - anchorDistance > bestDistance) break;
+            final int id = ids[q];
+            if (world.getPlanetSlot(id) == -1 || (filter != null && !filter.test(id))) continue;
+            final double distance = distance(q, x, y);
+            if (distance < bestDistance) {
+                best = id;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the k planets whose centres are closest to a point, closest first.
+     * @param filter planet id filter, or null to accept every planet still in the game
+     * @return number of planet ids written to {@code out}
+     */
+    public int nearest(final double x, final double y, final int k, final IntPredicate filter, final int[] out) {
+        if (count == 0 || k <= 0) return 0;
+        double[] best = scratch.get();
+        if (best.length < k) {
+            best = new double[Math.max(k, best.length * 2)];
+            scratch.set(best);
+        }
+
+        final WorldState world = gameMap.getWorld();
+        final int anchor = anchor(x, y);
+        final double anchorDistance = distance(anchor, x, y);
+        final int row = anchor * count;
+        int found = 0;
+        for (int i = 0; i < count; ++i) {
+            final int q = rings[row + i];
+            if (found == k && distances[row + q] - anchorDistance > best[k - 1]) break;
+            final int id = ids[q];
+            if (world.getPlanetSlot(id) == -1 || (filter != null && !filter.test(id))) continue;
+            final double distance = distance(q, x, y);
+            if (found == k && distance >= best[k - 1]) continue;
+
+            // insertion into the sorted best list
+            int j = found == k ? k - 1 : found++;
+            while (j > 0 && best[j - 1] > distance) {
+                best[j] = best[j - 1];
+                out[j] = out[j - 1];
+                --j;
+            }
+            best[j] = distance;
+            out[j] = id;
+        }
+        return found;
+    }
+
+    // Planet closest to the point, alive or not; any planet gives correct results, a close one prunes best
+    private int anchor(final double x, final double y) {
+        final int slot = gameMap.getPlanetIndex().nearest(x, y, Double.POSITIVE_INFINITY, null);
+        if (slot == -1) return 0;
+        final int id = gameMap.getWorld().getPlanetId(slot);
+        return id < indexById.length && indexById[id] != -1 ? indexById[id] : 0;
+    }
+
+    private double distance(final int a, final double x, final double y) {
+        final double dx = xs[a] - x;
+        final double dy = ys[a] - y;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
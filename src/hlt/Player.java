@@ -1,28 +1,58 @@
 package hlt;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Comparator;
+import java.util.List;
 
 public class Player {
 
-    private final Map<Integer, Ship> ships;
+    // In id order, with an index by id for lookups
+    private final ArrayList<Ship> ships;
+    private final List<Ship> shipsUnmodifiable;
+    private final IntObjMap<Ship> shipsById;
+    private boolean unsorted;
     private final int id;
 
-    public Player(final int id, Map<Integer, Ship> ships) {
+    public Player(final int id) {
         this.id = id;
-        this.ships = Collections.unmodifiableMap(ships);
+        ships = new ArrayList<>();
+        shipsUnmodifiable = Collections.unmodifiableList(ships);
+        shipsById = new IntObjMap<>();
     }
 
-    public Map<Integer, Ship> getShips() {
-        return ships;
+    /**
+     * @return the player's ships, in increasing id order
+     */
+    public List<Ship> getShips() {
+        return shipsUnmodifiable;
     }
 
     public Ship getShip(final int entityId) {
-        return ships.get(entityId);
+        return shipsById.get(entityId);
     }
 
     public int getId() {
         return id;
     }
+
+    // Refilled by GameMap on every update, reusing the containers
+
+    void clearShips() {
+        ships.clear();
+        shipsById.clear();
+        unsorted = false;
+    }
+
+    void addShip(final Ship ship) {
+        if (!ships.isEmpty() && ships.get(ships.size() - 1).getId() > ship.getId()) unsorted = true;
+        ships.add(ship);
+        shipsById.put(ship.getId(), ship);
+    }
+
+    // The engine lists ships in id order, so this only sorts if it ever does not
+    void finishShips() {
+        if (unsorted) ships.sort(Comparator.comparingInt(Ship::getId));
+        unsorted = false;
+    }
 }
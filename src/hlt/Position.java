@@ -19,13 +19,26 @@ public class Position {
     }
 
     public double getDistanceTo(final Position target) {
-        final double dx = xPos - target.getXPos();
-        final double dy = yPos - target.getYPos();
-        return Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
+        return Math.sqrt(getDistanceSquaredTo(target));
+    }
+
+    /** Square of {@link #getDistanceTo}, for comparisons that do not need the square root */
+    public double getDistanceSquaredTo(final Position target) {
+        return FastMath.distanceSq(xPos, yPos, target.getXPos(), target.getYPos());
+    }
+
+    /** True if the target is no further than the given distance */
+    public boolean isWithin(final Position target, final double distance) {
+        return FastMath.isWithin(xPos, yPos, target.getXPos(), target.getYPos(), distance);
+    }
+
+    /** True if the target is strictly closer than the given distance */
+    public boolean isCloserThan(final Position target, final double distance) {
+        return FastMath.isCloserThan(xPos, yPos, target.getXPos(), target.getYPos(), distance);
     }
 
     public int orientTowardsInDeg(final Position target) {
-        return Util.angleRadToDegClipped(orientTowardsInRad(target));
+        return FastMath.headingDeg(xPos, yPos, target.getXPos(), target.getYPos());
     }
 
     public double orientTowardsInRad(final Position target) {
@@ -37,10 +50,14 @@ public class Position {
 
     public Position getClosestPoint(final Entity target) {
         final double radius = target.getRadius() + Constants.MIN_DISTANCE_FOR_CLOSEST_POINT;
-        final double angleRad = target.orientTowardsInRad(this);
+        final double dx = xPos - target.getXPos();
+        final double dy = yPos - target.getYPos();
+        final double distance = Math.sqrt(dx * dx + dy * dy);
+        // Along the line from the target's centre to this position; due east if they coincide
+        if (distance == 0) return new Position(target.getXPos() + radius, target.getYPos());
 
-        final double x = target.getXPos() + radius * Math.cos(angleRad);
-        final double y = target.getYPos() + radius * Math.sin(angleRad);
+        final double x = target.getXPos() + radius * dx / distance;
+        final double y = target.getYPos() + radius * dy / distance;
 
         return new Position(x, y);
     }
@@ -0,0 +1,66 @@
+package hlt;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a game recording: every line received from the engine as raw bytes, the seed the bot
+ * was given, and for every turn the command line sent and the time taken to send it.
+ * See {@link Recording} for the format and for reading it back.
+ *
+ * The recording is gzip compressed and flushed every turn, so it is complete up to the last turn
+ * even if the process is killed.
+ */
+public class Recorder {
+
+    private final DataOutputStream out;
+    private long frameReceived;
+
+    public Recorder(final OutputStream stream, final long seed) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(stream, true)));
+        out.writeInt(Recording.MAGIC);
+        out.writeShort(Recording.VERSION);
+        out.writeLong(seed);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "recorder-shutdown"));
+    }
+
+    /**
+     * Record a line received from the engine; starts the turn clock.
+     */
+    public synchronized void frame(final byte[] bytes, final int start, final int length) {
+        frameReceived = System.nanoTime();
+        try {
+            out.writeByte(Recording.FRAME);
+            out.writeInt(length);
+            out.write(bytes, start, length);
+        } catch (final IOException e) {
+            Log.log(Log.Level.WARN, "Recording failed: " + e);
+        }
+    }
+
+    /**
+     * Record the command line about to be sent for the turn, without its newline.
+     */
+    public synchronized void moves(final byte[] bytes, final int length) {
+        try {
+            out.writeByte(Recording.MOVES);
+            out.writeLong(System.nanoTime() - frameReceived);
+            out.writeInt(length);
+            out.write(bytes, 0, length);
+            out.flush();
+        } catch (final IOException e) {
+            Log.log(Log.Level.WARN, "Recording failed: " + e);
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (final IOException e) {
+            // Nothing left to do with a recording that cannot be written
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package hlt;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a game recording written by {@link Recorder}.
+ *
+ * Format, gzip compressed: a header of magic number, version and seed (long), then one record per line exchanged with the engine. A {@link #FRAME} record holds the length
+ * and raw bytes of a line received; a {@link #MOVES} record the nanoseconds from receiving the
+ * frame to sending the turn's commands, then their length and bytes.
+ */
+public class Recording {
+
+    static final int MAGIC = 0x484C5452; // "HLTR"
+    static final int VERSION = 1;
+
+    public static final int END = 0;
+    public static final int FRAME = 1;
+    public static final int MOVES = 2;
+
+    private final DataInputStream in;
+    private final long seed;
+
+    private int type;
+    private byte[] bytes = new byte[1 << 16];
+    private int length;
+    private long elapsedNanos;
+
+    public Recording(final InputStream stream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream)));
+        if (in.readInt() != MAGIC) throw new IOException("Not a game recording");
+        final int version = in.readUnsignedShort();
+        if (version != VERSION) throw new IOException("Unsupported recording version " + version);
+        seed = in.readLong();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Move to the next record.
+     * @return its type: {@link #FRAME}, {@link #MOVES}, or {@link #END} at the end of the recording
+     */
+    public int next() throws IOException {
+        try {
+            final int tag = in.readByte();
+            if (tag == MOVES) {
+                elapsedNanos = in.readLong();
+            } else if (tag != FRAME) {
+                throw new IOException("Corrupt recording: record type " + tag);
+            }
+            length = in.readInt();
+            if (bytes.length < length) bytes = new byte[Math.max(length, bytes.length * 2)];
+            in.readFully(bytes, 0, length);
+            return type = tag;
+        } catch (final EOFException e) {
+            // End of the recording, or a record cut short by the bot being killed
+            return type = END;
+        }
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return buffer holding the current record's line in its first {@link #getLength()} bytes
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /** For a {@link #MOVES} record, nanoseconds between receiving the frame and sending the commands */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
@@ -0,0 +1,362 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Routes around planets over a visibility graph, for moves whose straight path is blocked.
+ *
+ * The graph is built once from the first frame. Each planet is circumscribed by a polygon of
+ * {@link #NODES_PER_PLANET} nodes just outside its clearance circle (its radius plus
+ * {@link Constants#FORECAST_FUDGE_FACTOR}, the margin navigation keeps from planets). Two nodes
+ * are joined when the segment between them clears every planet. For every pair that does not,
+ * the planets in the way are recorded, so when a planet is destroyed only the pairs it blocked
+ * are re-examined, and its own nodes are dropped. Nodes that start off the map or inside another
+ * planet's clearance are never used.
+ *
+ * {@link #findRoute} runs A* from a point to a point, linking both ends to the nodes they can
+ * see. The resulting {@link Route} lasts several turns: {@link #nextWaypoint} advances along it
+ * as the ship moves, and always aims for the furthest waypoint in sight. Queries may run
+ * concurrently from several threads; the graph only changes during map updates.
+ */
+public class Router {
+
+    public static final int NODES_PER_PLANET = 8;
+    // Extra clearance of the nodes beyond the planets' clearance circles
+    private static final double NODE_MARGIN = 1.0;
+    private static final int NONE = -1;
+
+    private final GameMap gameMap;
+    private final int nodeCount;
+    private final double[] nodeX;
+    private final double[] nodeY;
+    private final boolean[] alive;
+    // Planets at game start, by router index
+    private final int planetCount;
+    private final int[] planetIds;
+    private final double[] planetX;
+    private final double[] planetY;
+    private final double[] clearance;
+    // Per node pair u * nodeCount + v, u < v: number of live planets in the way
+    private final int[] blockers;
+    // Per planet: the node pairs it blocks
+    private final int[][] blockedPairs;
+    // Adjacency of the live graph, in compressed rows: neighbours of u are edges[edgeStart[u], edgeStart[u + 1])
+    private int[] edgeStart;
+    private int[] edges;
+    private double[] edgeLengths;
+
+    private final ThreadLocal<Search> searches;
+
+    /**
+     * A route to a goal: the waypoints in order, and how far along them the ship has come.
+     */
+    public static final class Route {
+        private final double goalX;
+        private final double goalY;
+        private final int[] nodes;
+        private int next;
+
+        private Route(final double goalX, final double goalY, final int[] nodes) {
+            this.goalX = goalX;
+            this.goalY = goalY;
+            this.nodes = nodes;
+        }
+
+        public double getGoalX() {
+            return goalX;
+        }
+
+        public double getGoalY() {
+            return goalY;
+        }
+
+        /** Waypoints not yet passed */
+        public int getRemaining() {
+            return nodes.length - next;
+        }
+    }
+
+    public Router(final GameMap gameMap) {
+        this.gameMap = gameMap;
+        final WorldState world = gameMap.getWorld();
+        planetCount = world.getPlanetCount();
+        planetIds = new int[planetCount];
+        planetX = new double[planetCount];
+        planetY = new double[planetCount];
+        clearance = new double[planetCount];
+        for (int p = 0; p < planetCount; ++p) {
+            planetIds[p] = world.getPlanetId(p);
+            planetX[p] = world.getPlanetX(p);
+            planetY[p] = world.getPlanetY(p);
+            clearance[p] = world.getPlanetRadius(p) + Constants.FORECAST_FUDGE_FACTOR;
+        }
+
+        // Polygon vertices, far enough out that the sides clear the circle
+        nodeCount = planetCount * NODES_PER_PLANET;
+        nodeX = new double[nodeCount];
+        nodeY = new double[nodeCount];
+        alive = new boolean[nodeCount];
+        for (int p = 0; p < planetCount; ++p) {
+            final double radius = (clearance[p] + NODE_MARGIN) / Math.cos(Math.PI / NODES_PER_PLANET);
+            for (int k = 0; k < NODES_PER_PLANET; ++k) {
+                final int u = p * NODES_PER_PLANET + k;
+                final double angle = 2 * Math.PI * k / NODES_PER_PLANET;
+                nodeX[u] = planetX[p] + radius * Math.cos(angle);
+                nodeY[u] = planetY[p] + radius * Math.sin(angle);
+                alive[u] = nodeX[u] > 0 && nodeY[u] > 0
+                        && nodeX[u] < gameMap.getWidth() && nodeY[u] < gameMap.getHeight()
+                        && !insidePlanet(nodeX[u], nodeY[u]);
+            }
+        }
+
+        blockers = new int[nodeCount * nodeCount];
+        final int[][] pairs = new int[planetCount][16];
+        final int[] pairCounts = new int[planetCount];
+        for (int u = 0; u < nodeCount; ++u) {
+            if (!alive[u]) continue;
+            for (int v = u + 1; v < nodeCount; ++v) {
+                if (!alive[v]) continue;
+                final int pair = u * nodeCount + v;
+                for (int p = 0; p < planetCount; ++p) {
+                    if (!Collision.segmentCircleIntersect(nodeX[u], nodeY[u], nodeX[v], nodeY[v],
+                            planetX[p], planetY[p], clearance[p], 0)) {
+                        continue;
+                    }
+                    ++blockers[pair];
+                    if (pairCounts[p] == pairs[p].length) pairs[p] = Arrays.copyOf(pairs[p], pairCounts[p] * 2);
+                    pairs[p][pairCounts[p]++] = pair;
+                }
+            }
+        }
+        blockedPairs = new int[planetCount][];
+        for (int p = 0; p < planetCount; ++p) blockedPairs[p] = Arrays.copyOf(pairs[p], pairCounts[p]);
+        buildEdges();
+
+        searches = ThreadLocal.withInitial(() -> new Search(nodeCount + 2));
+        gameMap.addListener(this::worldUpdated);
+    }
+
+    /**
+     * @return true if the segment clears every planet in the game
+     */
+    public boolean isVisible(final double x0, final double y0, final double x1, final double y1) {
+        return gameMap.getPlanetIndex().firstOnSegment(x0, y0, x1, y1, Constants.FORECAST_FUDGE_FACTOR, null) == -1;
+    }
+
+    /**
+     * Find the shortest route around the planets.
+     * @return the route, with no waypoints if the goal is in sight; null if the goal cannot be reached
+     */
+    public Route findRoute(final double startX, final double startY, final double goalX, final double goalY) {
+        if (isVisible(startX, startY, goalX, goalY)) return new Route(goalX, goalY, new int[0]);
+        final Search search = searches.get();
+        final int[] path = search.run(startX, startY, goalX, goalY);
+        return path == null ? null : new Route(goalX, goalY, path);
+    }
+
+    /**
+     * Advance along the route from the ship's position.
+     * @return the furthest waypoint, or the goal, in sight; null if the route is broken, because a
+     * waypoint was dropped or none of the remaining ones is in sight
+     */
+    public Position nextWaypoint(final Route route, final double x, final double y) {
+        if (isVisible(x, y, route.goalX, route.goalY)) {
+            route.next = route.nodes.length;
+            return new Position(route.goalX, route.goalY);
+        }
+        for (int i = route.next; i < route.nodes.length; ++i) {
+            if (!alive[route.nodes[i]]) return null;
+        }
+        // Furthest waypoint in sight
+        for (int i = route.nodes.length - 1; i >= route.next; --i) {
+            final int u = route.nodes[i];
+            if (isVisible(x, y, nodeX[u], nodeY[u])) {
+                route.next = i;
+                return new Position(nodeX[u], nodeY[u]);
+            }
+        }
+        return null;
+    }
+
+    private void worldUpdated(final GameMap map, final WorldDelta delta) {
+        if (delta.getPlanetsDestroyedCount() == 0) return;
+        for (int i = 0; i < delta.getPlanetsDestroyedCount(); ++i) {
+            final int id = delta.getDestroyedPlanetId(i);
+            for (int p = 0; p < planetCount; ++p) {
+                if (planetIds[p] != id) continue;
+                for (int k = 0; k < NODES_PER_PLANET; ++k) alive[p * NODES_PER_PLANET + k] = false;
+                for (final int pair : blockedPairs[p]) --blockers[pair];
+                blockedPairs[p] = new int[0];
+            }
+        }
+        buildEdges();
+    }
+
+    // Compressed adjacency of live nodes joined by clear segments
+    private void buildEdges() {
+        final int[] start = new int[nodeCount + 1];
+        int total = 0;
+        for (int u = 0; u < nodeCount; ++u) {
+            for (int v = 0; v < nodeCount; ++v) {
+                if (isEdge(u, v)) ++total;
+            }
+        }
+        final int[] targets = new int[total];
+        final double[] lengths = new double[total];
+        int e = 0;
+        for (int u = 0; u < nodeCount; ++u) {
+            start[u] = e;
+            for (int v = 0; v < nodeCount; ++v) {
+                if (!isEdge(u, v)) continue;
+                targets[e] = v;
+                lengths[e] = Math.hypot(nodeX[v] - nodeX[u], nodeY[v] - nodeY[u]);
+                ++e;
+            }
+        }
+        start[nodeCount] = e;
+        // Published together; searches started before this keep the arrays they read
+        edges = targets;
+        edgeLengths = lengths;
+        edgeStart = start;
+    }
+
+    private boolean isEdge(final int u, final int v) {
+        if (u == v || !alive[u] || !alive[v]) return false;
+        return blockers[Math.min(u, v) * nodeCount + Math.max(u, v)] == 0;
+    }
+
+    private boolean insidePlanet(final double x, final double y) {
+        for (int p = 0; p < planetCount; ++p) {
+            final double dx = x - planetX[p];
+            final double dy = y - planetY[p];
+            if (dx * dx + dy * dy <= clearance[p] * clearance[p]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * A* scratch for one thread. Nodes are the graph's, then the start and the goal.
+     */
+    private final class Search {
+        private final int start;
+        private final int goal;
+        private final double[] cost;
+        private final int[] parent;
+        private final int[] visited;
+        private final int[] closed;
+        private int stamp;
+        // Binary heap of nodes by estimated total cost
+        private int[] heap;
+        private double[] heapKeys;
+        private int heapSize;
+        // Per node: whether the goal is in sight, for this search
+        private final boolean[] seesGoal;
+
+        Search(final int size) {
+            start = size - 2;
+            goal = size - 1;
+            cost = new double[size];
+            parent = new int[size];
+            visited = new int[size];
+            closed = new int[size];
+            heap = new int[size * 4];
+            heapKeys = new double[size * 4];
+            seesGoal = new boolean[size];
+        }
+
+        int[] run(final double startX, final double startY, final double goalX, final double goalY) {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                Arrays.fill(closed, 0);
+                stamp = 1;
+            }
+            final int[] edgeStart = Router.this.edgeStart;
+            final int[] edges = Router.this.edges;
+            final double[] edgeLengths = Router.this.edgeLengths;
+            heapSize = 0;
+
+            for (int u = 0; u < nodeCount; ++u) {
+                seesGoal[u] = alive[u] && isVisible(nodeX[u], nodeY[u], goalX, goalY);
+            }
+            // The start links to every node in sight
+            visited[start] = stamp;
+            cost[start] = 0;
+            closed[start] = stamp;
+            for (int v = 0; v < nodeCount; ++v) {
+                if (!alive[v] || !isVisible(startX, startY, nodeX[v], nodeY[v])) continue;
+                relax(start, v, Math.hypot(nodeX[v] - startX, nodeY[v] - startY), goalX, goalY);
+            }
+
+            while (heapSize > 0) {
+                final int u = pop();
+                if (closed[u] == stamp) continue;
+                closed[u] = stamp;
+                if (u == goal) return path();
+                if (seesGoal[u]) {
+                    relax(u, goal, Math.hypot(goalX - nodeX[u], goalY - nodeY[u]), goalX, goalY);
+                }
+                for (int e = edgeStart[u]; e < edgeStart[u + 1]; ++e) {
+                    final int v = edges[e];
+                    if (alive[v] && closed[v] != stamp) relax(u, v, edgeLengths[e], goalX, goalY);
+                }
+            }
+            return null;
+        }
+
+        private void relax(final int u, final int v, final double length, final double goalX, final double goalY) {
+            final double candidate = cost[u] + length;
+            if (visited[v] == stamp && candidate >= cost[v]) return;
+            visited[v] = stamp;
+            cost[v] = candidate;
+            parent[v] = u;
+            final double heuristic = v == goal ? 0 : Math.hypot(goalX - nodeX[v], goalY - nodeY[v]);
+            push(v, candidate + heuristic);
+        }
+
+        // Waypoints from the start to the goal, both excluded
+        private int[] path() {
+            int length = 0;
+            for (int u = parent[goal]; u != start; u = parent[u]) ++length;
+            final int[] path = new int[length];
+            for (int u = parent[goal]; u != start; u = parent[u]) path[--length] = u;
+            return path;
+        }
+
+        private void push(final int node, final double key) {
+            // Nodes are pushed again rather than decreased, so the heap can outgrow the node count
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heapSize * 2);
+                heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                final int up = (i - 1) / 2;
+                if (heapKeys[up] <= key) break;
+                heap[i] = heap[up];
+                heapKeys[i] = heapKeys[up];
+                i = up;
+            }
+            heap[i] = node;
+            heapKeys[i] = key;
+        }
+
+        private int pop() {
+            final int top = heap[0];
+            final int last = heap[--heapSize];
+            final double key = heapKeys[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) break;
+                if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) ++child;
+                if (heapKeys[child] >= key) break;
+                heap[i] = heap[child];
+                heapKeys[i] = heapKeys[child];
+                i = child;
+            }
+            heap[i] = last;
+            heapKeys[i] = key;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package hlt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Headless Halite II game for local self-play.
+ *
+ * Frames are written in the engine's format to a {@link TokenBuffer}, so bots read them through
+ * {@link GameMap#updateMap} exactly as in a real game, and moves are taken as the {@link Move}s
+ * bots produce. A turn follows the engine's order of events:
+ * <ol>
+ *     <li>dock and undock commands, and thrusts of undocked ships, are applied;</li>
+ *     <li>ships move in a straight line over the turn; ships that touch each other or a planet are
+ *     destroyed at the moment they touch, ramming planets for the ship's health, and ships that
+ *     leave the map are destroyed;</li>
+ *     <li>undocked ships fire at every enemy ship within {@link Constants#WEAPON_RADIUS},
+ *     splitting {@link Constants#WEAPON_DAMAGE} between them;</li>
+ *     <li>destroyed planets explode, destroying their docked ships and damaging ships within
+ *     {@link Constants#EXPLOSION_RADIUS} of their surface;</li>
+ *     <li>docking and undocking progress; docked ships produce, and planets spawn a ship per
+ *     {@link Constants#SHIP_COST} of production.</li>
+ * </ol>
+ * Unlike the engine, weapons fire once at the end of movement rather than at the moment ships
+ * come within range.
+ *
+ * Maps are generated from a seed with rotational symmetry between players, so a seed and the
+ * bots' moves determine the whole game.
+ */
+public class Simulator {
+
+    public static final int SHIPS_PER_PLAYER = 3;
+
+    private final int width;
+    private final int height;
+    private final int playerCount;
+    private final int maxTurns;
+    private int turn;
+    private int nextShipId;
+
+    private final List<SimShip> ships = new ArrayList<>();
+    private final List<SimPlanet> planets = new ArrayList<>();
+    private final TokenBuffer frame = new TokenBuffer();
+    private final int[] shipCounts;
+
+    private static final class SimShip {
+        final int id;
+        final int owner;
+        double x, y;
+        double vx, vy;
+        int health = Constants.BASE_SHIP_HEALTH;
+        Ship.DockingStatus status = Ship.DockingStatus.Undocked;
+        SimPlanet planet;
+        int progress;
+        int cooldown;
+        boolean alive = true;
+        int damage;
+
+        SimShip(final int id, final int owner, final double x, final double y) {
+            this.id = id;
+            this.owner = owner;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static final class SimPlanet {
+        final int id;
+        final double x, y, radius;
+        final int dockingSpots;
+        int health;
+        int owner = -1;
+        int production;
+        final List<SimShip> docked = new ArrayList<>();
+        boolean alive = true;
+
+        SimPlanet(final int id, final double x, final double y, final double radius) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.dockingSpots = Math.min(6, 1 + (int) (radius / 2));
+            this.health = (int) (radius * Constants.BASE_SHIP_HEALTH);
+        }
+    }
+
+    /**
+     * Generate a game.
+     * @param playerCount 2 or 4 players
+     */
+    public Simulator(final int playerCount, final int width, final int height, final long seed) {
+        if (playerCount != 2 && playerCount != 4) {
+            throw new IllegalArgumentException("Simulator supports 2 or 4 players, not " + playerCount);
+        }
+        this.width = width;
+        this.height = height;
+        this.playerCount = playerCount;
+        this.maxTurns = 100 + (int) Math.sqrt(width * height);
+        this.shipCounts = new int[playerCount];
+        final Random random = new Random(seed);
+
+        // Starting fleets, around points symmetric about the centre
+        for (int player = 0; player < playerCount; ++player) {
+            final double[] start = image(player, width * 0.2, height * 0.5);
+            for (int i = 0; i < SHIPS_PER_PLAYER; ++i) {
+                ships.add(new SimShip(nextShipId++, player, start[0], start[1] + 2 * (i - 1)));
+            }
+        }
+
+        // Planets: a central one, then candidates in one sector copied into every player's sector
+        final double centerX = width / 2.0, centerY = height / 2.0;
+        addPlanets(new double[][]{{centerX, centerY}}, 3 + random.nextDouble() * 4);
+        final int groups = 4 + random.nextInt(5);
+        for (int attempt = 0, placed = 0; placed < groups && attempt < 1000; ++attempt) {
+            final double radius = 3 + random.nextDouble() * 5;
+            final double x = radius + 1 + random.nextDouble() * (width / 2.0 - 2 * radius - 2);
+            final double y = radius + 1 + random.nextDouble() * (height - 2 * radius - 2);
+            final double[][] images = new double[playerCount][];
+            for (int player = 0; player < playerCount; ++player) images[player] = image(player, x, y);
+            if (fits(images, radius)) {
+                addPlanets(images, radius);
+                ++placed;
+            }
+        }
+        countShips();
+    }
+
+    // Position of the given player's copy of a point in player 0's sector
+    private double[] image(final int player, final double x, final double y) {
+        if (playerCount == 2) {
+            return player == 0 ? new double[]{x, y} : new double[]{width - x, height - y};
+        }
+        // 4 players: quadrants, mirrored across both axes; y is scaled into the top half
+        final double qy = y / 2;
+        switch (player) {
+            case 0: return new double[]{x, qy};
+            case 1: return new double[]{width - x, qy};
+            case 2: return new double[]{x, height - qy};
+            default: return new double[]{width - x, height - qy};
+        }
+    }
+
+    private boolean fits(final double[][] centers, final double radius) {
+        for (final double[] center : centers) {
+            final double x = center[0], y = center[1];
+            if (x - radius < 1 || y - radius < 1 || x + radius > width - 1 || y + radius > height - 1) return false;
+            for (final SimPlanet planet : planets) {
+                if (Math.hypot(planet.x - x, planet.y - y) < planet.radius + radius + 10) return false;
+            }
+            for (final SimShip ship : ships) {
+                if (Math.hypot(ship.x - x, ship.y - y) < radius + 10) return false;
+            }
+            for (final double[] other : centers) {
+                if (other != center && Math.hypot(other[0] - x, other[1] - y) < 2 * radius + 10) return false;
+            }
+        }
+        return true;
+    }
+
+    private void addPlanets(final double[][] centers, final double radius) {
+        for (final double[] center : centers) {
+            planets.add(new SimPlanet(planets.size(), center[0], center[1], radius));
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * @return the current frame, in the engine's format, ready to be read by {@link GameMap#updateMap}
+     */
+    public TokenSource frame() {
+        frame.clear();
+        frame.add(playerCount);
+        for (int player = 0; player < playerCount; ++player) {
+            frame.add(player);
+            frame.add(shipCounts[player]);
+            for (final SimShip ship : ships) {
+                if (ship.owner != player) continue;
+                frame.add(ship.id);
+                frame.add(ship.x);
+                frame.add(ship.y);
+                frame.add(ship.health);
+                frame.add(0.0);
+                frame.add(0.0);
+                frame.add(ship.status.ordinal());
+                frame.add(ship.planet == null ? 0 : ship.planet.id);
+                frame.add(ship.progress);
+                frame.add(ship.cooldown);
+            }
+        }
+        frame.add(planets.size());
+        for (final SimPlanet planet : planets) {
+            frame.add(planet.id);
+            frame.add(planet.x);
+            frame.add(planet.y);
+            frame.add(planet.health);
+            frame.add(planet.radius);
+            frame.add(planet.dockingSpots);
+            frame.add(planet.production);
+            frame.add(Integer.MAX_VALUE);
+            frame.add(planet.owner == -1 ? 0 : 1);
+            frame.add(planet.owner == -1 ? 0 : planet.owner);
+            frame.add(planet.docked.size());
+            for (final SimShip ship : planet.docked) frame.add(ship.id);
+        }
+        return frame;
+    }
+
+    /**
+     * @return number of ships the player has
+     */
+    public int getShipCount(final int player) {
+        return shipCounts[player];
+    }
+
+    /**
+     * @return true once the turn limit is reached or at most one player has ships left
+     */
+    public boolean isOver() {
+        int alive = 0;
+        for (int player = 0; player < playerCount; ++player) {
+            if (shipCounts[player] > 0) ++alive;
+        }
+        return turn >= maxTurns || alive <= 1;
+    }
+
+    /**
+     * @return the player with the most ships, ties going to the lower id
+     */
+    public int getLeader() {
+        int leader = 0;
+        for (int player = 1; player < playerCount; ++player) {
+            if (shipCounts[player] > shipCounts[leader]) leader = player;
+        }
+        return leader;
+    }
+
+    /**
+     * Play one turn.
+     * @param moves each player's moves for this turn, indexed by player id; null for none
+     */
+    public void step(final List<? extends Iterable<Move>> moves) {
+        applyMoves(moves);
+        move();
+        fire();
+        explodePlanets();
+        progressDocking();
+        produce();
+        ships.removeIf(ship -> !ship.alive);
+        planets.removeIf(planet -> !planet.alive);
+        countShips();
+        ++turn;
+    }
+
+    private void applyMoves(final List<? extends Iterable<Move>> moves) {
+        for (final SimShip ship : ships) {
+            ship.vx = 0;
+            ship.vy = 0;
+            if (ship.cooldown > 0) --ship.cooldown;
+        }
+        // Planet id -> players docking on it this turn, as a bit set
+        final int[] docking = new int[planets.size() == 0 ? 0 : planets.get(planets.size() - 1).id + 1];
+        final List<SimShip> dockers = new ArrayList<>();
+        for (int player = 0; player < playerCount && player < moves.size(); ++player) {
+            if (moves.get(player) == null) continue;
+            for (final Move move : moves.get(player)) {
+                final SimShip ship = find(player, move.getShip().getId());
+                if (ship == null) continue;
+                switch (move.getType()) {
+                    case Thrust:
+                        if (ship.status != Ship.DockingStatus.Undocked) break;
+                        final ThrustMove thrust = (ThrustMove) move;
+                        final int speed = Math.min(Math.max(thrust.getThrust(), 0), Constants.MAX_SPEED);
+                        ship.vx = speed * FastMath.cosDeg(thrust.getAngle());
+                        ship.vy = speed * FastMath.sinDeg(thrust.getAngle());
+                        break;
+                    case Dock:
+                        final SimPlanet planet = findPlanet((int) ((DockMove) move).getDestinationId());
+                        if (ship.status != Ship.DockingStatus.Undocked || planet == null) break;
+                        if (!FastMath.isWithin(ship.x, ship.y, planet.x, planet.y,
+                                planet.radius + Constants.DOCK_RADIUS + Constants.SHIP_RADIUS)) break;
+                        if (planet.owner != -1 && planet.owner != player) break;
+                        ship.planet = planet;
+                        dockers.add(ship);
+                        docking[planet.id] |= 1 << player;
+                        break;
+                    case Undock:
+                        if (ship.status != Ship.DockingStatus.Docked) break;
+                        ship.status = Ship.DockingStatus.Undocking;
+                        ship.progress = Constants.DOCK_TURNS;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        // Players racing to dock on the same unowned planet all fail
+        for (final SimShip ship : dockers) {
+            final SimPlanet planet = ship.planet;
+            if (Integer.bitCount(docking[planet.id]) > 1 || planet.docked.size() >= planet.dockingSpots) {
+                ship.planet = null;
+                continue;
+            }
+            ship.status = Ship.DockingStatus.Docking;
+            ship.progress = Constants.DOCK_TURNS;
+            planet.docked.add(ship);
+            planet.owner = ship.owner;
+        }
+    }
+
+    private void move() {
+        // Collisions in the order they happen; each is (time, ship index, other ship index or -1 - planet index)
+        final List<double[]> events = new ArrayList<>();
+        final double touch = 2 * Constants.SHIP_RADIUS;
+        final double reach = 2 * Constants.MAX_SPEED + touch;
+        for (int i = 0; i < ships.size(); ++i) {
+            final SimShip a = ships.get(i);
+            for (int j = i + 1; j < ships.size(); ++j) {
+                final SimShip b = ships.get(j);
+                // too far apart to meet this turn
+                if (Math.abs(b.x - a.x) > reach || Math.abs(b.y - a.y) > reach) continue;
+                final double time = contactTime(b.x - a.x, b.y - a.y, b.vx - a.vx, b.vy - a.vy, touch);
+                if (time >= 0) events.add(new double[]{time, i, j});
+            }
+            if (a.vx == 0 && a.vy == 0) continue;
+            for (int p = 0; p < planets.size(); ++p) {
+                final SimPlanet planet = planets.get(p);
+                final double time = contactTime(planet.x - a.x, planet.y - a.y, -a.vx, -a.vy,
+                        planet.radius + Constants.SHIP_RADIUS);
+                if (time >= 0) events.add(new double[]{time, i, -1 - p});
+            }
+        }
+        events.sort((e, f) -> Double.compare(e[0], f[0]));
+
+        for (final double[] event : events) {
+            final SimShip ship = ships.get((int) event[1]);
+            if (!ship.alive) continue;
+            final int other = (int) event[2];
+            if (other >= 0) {
+                final SimShip target = ships.get(other);
+                if (!target.alive) continue;
+                destroy(ship);
+                destroy(target);
+            } else {
+                final SimPlanet planet = planets.get(-1 - other);
+                planet.health -= ship.health;
+                destroy(ship);
+            }
+        }
+
+        for (final SimShip ship : ships) {
+            if (!ship.alive) continue;
+            ship.x += ship.vx;
+            ship.y += ship.vy;
+            if (ship.x < 0 || ship.y < 0 || ship.x >= width || ship.y >= height) destroy(ship);
+        }
+    }
+
+    /**
+     * Earliest time in [0, 1] at which two circles, one at the origin and one at relative
+     * position p moving at relative velocity v, come within the given distance; -1 if never.
+     */
+    private static double contactTime(final double px, final double py, final double vx, final double vy,
+                                      final double distance) {
+        final double c = px * px + py * py - distance * distance;
+        if (c <= 0) return 0;
+        final double a = vx * vx + vy * vy;
+        if (a == 0) return -1;
+        final double b = px * vx + py * vy;
+        if (b >= 0) return -1;
+        final double discriminant = b * b - a * c;
+        if (discriminant < 0) return -1;
+        final double time = (-b - Math.sqrt(discriminant)) / a;
+        return time <= 1 ? time : -1;
+    }
+
+    private void fire() {
+        final double range = Constants.WEAPON_RADIUS + Constants.SHIP_RADIUS;
+        final List<SimShip> targets = new ArrayList<>();
+        for (final SimShip ship : ships) {
+            if (!ship.alive || ship.status != Ship.DockingStatus.Undocked || ship.cooldown > 0) continue;
+            targets.clear();
+            for (final SimShip other : ships) {
+                if (other.alive && other.owner != ship.owner
+                        && FastMath.isWithin(other.x, other.y, ship.x, ship.y, range)) {
+                    targets.add(other);
+                }
+            }
+            if (targets.isEmpty()) continue;
+            ship.cooldown = Constants.WEAPON_COOLDOWN;
+            for (final SimShip target : targets) {
+                target.damage += Constants.WEAPON_DAMAGE / targets.size();
+            }
+        }
+        // Damage is simultaneous
+        for (final SimShip ship : ships) {
+            if (ship.damage == 0) continue;
+            ship.health -= ship.damage;
+            ship.damage = 0;
+            if (ship.health <= 0) destroy(ship);
+        }
+    }
+
+    private void explodePlanets() {
+        for (final SimPlanet planet : planets) {
+            if (!planet.alive || planet.health > 0) continue;
+            planet.alive = false;
+            for (final SimShip ship : new ArrayList<>(planet.docked)) destroy(ship);
+            for (final SimShip ship : ships) {
+                if (!ship.alive) continue;
+                final double distance = Math.hypot(ship.x - planet.x, ship.y - planet.y) - planet.radius;
+                if (distance > Constants.EXPLOSION_RADIUS) continue;
+                ship.health -= (int) (Constants.MAX_SHIP_HEALTH * (1 - Math.max(0, distance) / Constants.EXPLOSION_RADIUS));
+                if (ship.health <= 0) destroy(ship);
+            }
+        }
+    }
+
+    private void progressDocking() {
+        for (final SimShip ship : ships) {
+            if (!ship.alive || ship.progress == 0) continue;
+            if (--ship.progress > 0) continue;
+            if (ship.status == Ship.DockingStatus.Docking) {
+                ship.status = Ship.DockingStatus.Docked;
+            } else if (ship.status == Ship.DockingStatus.Undocking) {
+                ship.status = Ship.DockingStatus.Undocked;
+                undock(ship);
+            }
+        }
+    }
+
+    private void produce() {
+        for (final SimPlanet planet : planets) {
+            if (!planet.alive || planet.owner == -1) continue;
+            for (final SimShip ship : planet.docked) {
+                if (ship.status == Ship.DockingStatus.Docked) planet.production += Constants.BASE_PRODUCTIVITY;
+            }
+            while (planet.production >= Constants.SHIP_COST && spawn(planet)) {
+                planet.production -= Constants.SHIP_COST;
+            }
+        }
+    }
+
+    // Spawn a ship next to the planet, facing the centre of the map if there is room; false if there is none
+    private boolean spawn(final SimPlanet planet) {
+        final double base = Math.atan2(height / 2.0 - planet.y, width / 2.0 - planet.x);
+        final double distance = planet.radius + Constants.SPAWN_RADIUS;
+        for (int k = 0; k < 36; ++k) {
+            // 0, +10, -10, +20, ... degrees
+            final double angle = base + Math.toRadians(10 * ((k + 1) / 2) * ((k & 1) == 1 ? 1 : -1));
+            final double x = planet.x + distance * Math.cos(angle);
+            final double y = planet.y + distance * Math.sin(angle);
+            if (x < 0 || y < 0 || x >= width || y >= height) continue;
+            boolean free = true;
+            for (final SimShip ship : ships) {
+                if (ship.alive && FastMath.isCloserThan(ship.x, ship.y, x, y, 2 * Constants.SHIP_RADIUS + 0.1)) {
+                    free = false;
+                    break;
+                }
+            }
+            if (free) {
+                ships.add(new SimShip(nextShipId++, planet.owner, x, y));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void destroy(final SimShip ship) {
+        if (!ship.alive) return;
+        ship.alive = false;
+        if (ship.planet != null) undock(ship);
+    }
+
+    private void undock(final SimShip ship) {
+        final SimPlanet planet = ship.planet;
+        planet.docked.remove(ship);
+        if (planet.docked.isEmpty()) planet.owner = -1;
+        ship.planet = null;
+    }
+
+    private void countShips() {
+        Arrays.fill(shipCounts, 0);
+        // Keep each player's ships contiguous and in id order, as the engine sends them
+        ships.sort((a, b) -> a.owner != b.owner ? Integer.compare(a.owner, b.owner) : Integer.compare(a.id, b.id));
+        for (final SimShip ship : ships) ++shipCounts[ship.owner];
+    }
+
+    private SimShip find(final int owner, final int id) {
+        for (final SimShip ship : ships) {
+            if (ship.id == id) return ship.owner == owner && ship.alive ? ship : null;
+        }
+        return null;
+    }
+
+    private SimPlanet findPlanet(final int id) {
+        for (final SimPlanet planet : planets) {
+            if (planet.id == id) return planet.alive ? planet : null;
+        }
+        return null;
+    }
+}
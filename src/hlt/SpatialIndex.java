@@ -0,0 +1,325 @@
+package hlt;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid over circular items stored in struct-of-arrays form (e.g. the ship or planet
+ * arrays of {@link WorldState}). Items are identified by their index into those arrays.
+ *
+ * The grid is two flat int arrays: per-cell start offsets and the item indices grouped by cell,
+ * rebuilt with a counting sort. Items are registered in every cell their bounding box touches,
+ * so large planets are found from any cell they cover. Queries are exact, allocate nothing and
+ * may run concurrently from several threads; results are written to a caller supplied array
+ * that must hold {@link #getCount()} items.
+ */
+public class SpatialIndex {
+
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    // items of cell c are cellItems[cellStart[c], cellStart[c + 1])
+    private final int[] cellStart;
+    private int[] cellItems = new int[256];
+
+    private int count;
+    private double[] xs;
+    private double[] ys;
+    private double[] radii;
+    private double maxRadius;
+
+    // Per-thread query scratch, so that queries can run concurrently between rebuilds
+    private final ThreadLocal<QueryState> queries = ThreadLocal.withInitial(QueryState::new);
+
+    // Per-item stamp so that items spanning several cells are reported once per query
+    private static final class QueryState {
+        int[] seen = new int[256];
+        int stamp;
+        // hits of the cell being scanned
+        int[] hits = new int[256];
+        // best item of the nearest query so far
+        int nearest;
+        double nearestDistSq;
+    }
+
+    public SpatialIndex(final double width, final double height, final double cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (int) (width / cellSize) + 1;
+        this.rows = (int) (height / cellSize) + 1;
+        this.cellStart = new int[columns * rows + 1];
+    }
+
+    /**
+     * Re-index the first {@code count} items of the given arrays. The arrays are referenced,
+     * not copied, and must not change until the next rebuild.
+     */
+    public void rebuild(final int count, final double[] xs, final double[] ys, final double[] radii) {
+        this.count = count;
+        this.xs = xs;
+        this.ys = ys;
+        this.radii = radii;
+
+        // Count entries per cell
+        Arrays.fill(cellStart, 0);
+        maxRadius = 0;
+        int entries = 0;
+        for (int i = 0; i < count; ++i) {
+            final double r = radii[i];
+            maxRadius = Math.max(maxRadius, r);
+            final int x0 = column(xs[i] - r), x1 = column(xs[i] + r);
+            final int y0 = row(ys[i] - r), y1 = row(ys[i] + r);
+            for (int cx = x0; cx <= x1; ++cx) {
+                for (int cy = y0; cy <= y1; ++cy) {
+                    ++cellStart[cell(cx, cy) + 1];
+                }
+            }
+            entries += (x1 - x0 + 1) * (y1 - y0 + 1);
+        }
+        for (int c = 1; c < cellStart.length; ++c) {
+            cellStart[c] += cellStart[c - 1];
+        }
+        if (cellItems.length < entries) {
+            cellItems = new int[Math.max(entries, cellItems.length * 2)];
+        }
+
+        // Fill, using cellStart[c] as the insertion cursor of cell c ...
+        for (int i = 0; i < count; ++i) {
+            final double r = radii[i];
+            final int x0 = column(xs[i] - r), x1 = column(xs[i] + r);
+            final int y0 = row(ys[i] - r), y1 = row(ys[i] + r);
+            for (int cx = x0; cx <= x1; ++cx) {
+                for (int cy = y0; cy <= y1; ++cy) {
+                    cellItems[cellStart[cell(cx, cy)]++] = i;
+                }
+            }
+        }
+        // ... which leaves every cursor at the start of the next cell; shift back
+        for (int c = cellStart.length - 1; c > 0; --c) {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Find items whose circle overlaps the given circle.
+     * @return number of items written to {@code out}
+     */
+    public int queryCircle(final double x, final double y, final double radius, final int[] out) {
+        return queryCircle(x, y, radius, null, out);
+    }
+
+    /**
+     * Find items whose circle overlaps the given circle and that pass the filter.
+     * @param filter item filter, or null to accept every item
+     * @return number of items written to {@code out}
+     */
+    public int queryCircle(final double x, final double y, final double radius,
+                           final IntPredicate filter, final int[] out) {
+        final QueryState state = queries.get();
+        final int stamp = nextQuery(state);
+        final int[] seen = state.seen;
+        final double reach = radius + maxRadius;
+        final int x0 = column(x - reach), x1 = column(x + reach);
+        final int y0 = row(y - reach), y1 = row(y + reach);
+        int found = 0;
+        for (int cx = x0; cx <= x1; ++cx) {
+            for (int cy = y0; cy <= y1; ++cy) {
+                final int c = cell(cx, cy);
+                for (int k = cellStart[c]; k < cellStart[c + 1]; ++k) {
+                    final int i = cellItems[k];
+                    if (seen[i] == stamp) continue;
+                    seen[i] = stamp;
+                    final double dx = xs[i] - x;
+                    final double dy = ys[i] - y;
+                    final double limit = radius + radii[i];
+                    if (dx * dx + dy * dy <= limit * limit && (filter == null || filter.test(i))) {
+                        out[found++] = i;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find items that a segment passes within {@code fudge} of, using the same test as
+     * {@link Collision#segmentCircleIntersect}.
+     * @return number of items written to {@code out}
+     */
+    public int querySegment(final double startX, final double startY, final double endX, final double endY,
+                            final double fudge, final int[] out) {
+        return scanSegment(startX, startY, endX, endY, fudge, null, out);
+    }
+
+    /**
+     * Find items that pass the filter and that a segment passes within {@code fudge} of.
+     * @param filter item filter, or null to accept every item
+     * @return number of items written to {@code out}
+     */
+    public int querySegment(final double startX, final double startY, final double endX, final double endY,
+                            final double fudge, final IntPredicate filter, final int[] out) {
+        return scanSegment(startX, startY, endX, endY, fudge, filter, out);
+    }
+
+    /**
+     * Early-exit variant of {@link #querySegment}: stops at the first item hit.
+     * @param filter item filter, or null to accept every item
+     * @return the first item hit, or -1 if the segment is clear
+     */
+    public int firstOnSegment(final double startX, final double startY, final double endX, final double endY,
+                              final double fudge, final IntPredicate filter) {
+        return scanSegment(startX, startY, endX, endY, fudge, filter, null);
+    }
+
+    /**
+     * Walk the cells touched by the segment's swept capsule and run the exact test on their items.
+     * @param out results buffer, or null to return the first hit instead of a count
+     */
+    private int scanSegment(final double startX, final double startY, final double endX, final double endY,
+                            final double fudge, final IntPredicate filter, final int[] out) {
+        final QueryState state = queries.get();
+        final int stamp = nextQuery(state);
+        final int[] seen = state.seen;
+        final double reach = maxRadius + fudge;
+        final int x0 = column(Math.min(startX, endX) - reach), x1 = column(Math.max(startX, endX) + reach);
+        final int y0 = row(Math.min(startY, endY) - reach), y1 = row(Math.max(startY, endY) + reach);
+        // A cell can only hold a hit if the segment passes within this distance of its centre:
+        // half its diagonal, plus how far outside the cell the centre of an item registered in it
+        // can be, plus the item's radius and the fudge
+        final double cellReach = cellSize * Math.sqrt(0.5) + maxRadius * (1 + Math.sqrt(2)) + fudge;
+        final double cellReachSq = cellReach * cellReach;
+        int found = 0;
+        for (int cx = x0; cx <= x1; ++cx) {
+            for (int cy = y0; cy <= y1; ++cy) {
+                final int c = cell(cx, cy);
+                if (cellStart[c] == cellStart[c + 1]) continue;
+                if (segmentDistanceSq(startX, startY, endX, endY, (cx + 0.5) * cellSize, (cy + 0.5) * cellSize)
+                        > cellReachSq) {
+                    continue;
+                }
+                // Test the whole cell in one batch; only hits need deduplicating, since an item
+                // missed here is missed again in any other cell it is registered in
+                final int size = cellStart[c + 1] - cellStart[c];
+                if (state.hits.length < size) state.hits = new int[Math.max(size, state.hits.length * 2)];
+                final int[] hits = state.hits;
+                final int hitCount = Collision.segmentCirclesIntersect(startX, startY, endX, endY, xs, ys, radii,
+                        cellItems, cellStart[c], cellStart[c + 1], fudge, hits);
+                for (int h = 0; h < hitCount; ++h) {
+                    final int i = hits[h];
+                    if (seen[i] == stamp) continue;
+                    seen[i] = stamp;
+                    if (filter == null || filter.test(i)) {
+                        if (out == null) return i;
+                        out[found++] = i;
+                    }
+                }
+            }
+        }
+        return out == null ? -1 : found;
+    }
+
+    /**
+     * Find the item closest to a point, measured between centres.
+     * @param maxDistance only consider items whose centre is within this distance
+     * @param filter item filter, or null to accept every item
+     * @return the item index, or -1 if none qualifies
+     */
+    public int nearest(final double x, final double y, final double maxDistance, final IntPredicate filter) {
+        final QueryState state = queries.get();
+        final int stamp = nextQuery(state);
+        state.nearest = -1;
+        state.nearestDistSq = maxDistance * maxDistance;
+        final int centerX = column(x), centerY = row(y);
+        // Furthest ring that still has a cell inside the grid
+        final int maxRing = Math.max(Math.max(centerX, columns - 1 - centerX), Math.max(centerY, rows - 1 - centerY));
+        for (int ring = 0; ring <= maxRing; ++ring) {
+            // Every unvisited cell is at least (ring - 1) cells away; items can overhang by maxRadius
+            final double ringDistance = Math.max(0, (ring - 1) * cellSize - maxRadius);
+            if (ringDistance * ringDistance > state.nearestDistSq) break;
+            if (ring == 0) {
+                nearestInCell(state, stamp, centerX, centerY, x, y, filter);
+                continue;
+            }
+            // Only the ring's perimeter: the top and bottom rows, then the sides between them
+            final int minX = Math.max(0, centerX - ring), maxX = Math.min(columns - 1, centerX + ring);
+            final int minY = Math.max(0, centerY - ring + 1), maxY = Math.min(rows - 1, centerY + ring - 1);
+            for (int cx = minX; cx <= maxX; ++cx) {
+                if (centerY - ring >= 0) nearestInCell(state, stamp, cx, centerY - ring, x, y, filter);
+                if (centerY + ring < rows) nearestInCell(state, stamp, cx, centerY + ring, x, y, filter);
+            }
+            for (int cy = minY; cy <= maxY; ++cy) {
+                if (centerX - ring >= 0) nearestInCell(state, stamp, centerX - ring, cy, x, y, filter);
+                if (centerX + ring < columns) nearestInCell(state, stamp, centerX + ring, cy, x, y, filter);
+            }
+        }
+        return state.nearest;
+    }
+
+    private void nearestInCell(final QueryState state, final int stamp, final int cx, final int cy,
+                               final double x, final double y, final IntPredicate filter) {
+        final int[] seen = state.seen;
+        final int c = cell(cx, cy);
+        for (int k = cellStart[c]; k < cellStart[c + 1]; ++k) {
+            final int i = cellItems[k];
+            if (seen[i] == stamp) continue;
+            seen[i] = stamp;
+            final double dx = xs[i] - x;
+            final double dy = ys[i] - y;
+            final double distSq = dx * dx + dy * dy;
+            if (distSq <= state.nearestDistSq && (filter == null || filter.test(i))) {
+                // ties go to the lowest index so results do not depend on cell order
+                if (distSq < state.nearestDistSq || state.nearest == -1 || i < state.nearest) {
+                    state.nearest = i;
+                    state.nearestDistSq = distSq;
+                }
+            }
+        }
+    }
+
+    private static double segmentDistanceSq(final double startX, final double startY,
+                                            final double endX, final double endY,
+                                            final double x, final double y) {
+        final double dx = endX - startX;
+        final double dy = endY - startY;
+        final double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((x - startX) * dx + (y - startY) * dy) / lengthSq;
+        t = t < 0 ? 0 : (t > 1 ? 1 : t);
+        final double ox = startX + dx * t - x;
+        final double oy = startY + dy * t - y;
+        return ox * ox + oy * oy;
+    }
+
+    private int nextQuery(final QueryState state) {
+        if (state.seen.length < count) {
+            state.seen = new int[Math.max(count, state.seen.length * 2)];
+            state.stamp = 0;
+        }
+        if (++state.stamp == Integer.MAX_VALUE) {
+            Arrays.fill(state.seen, 0);
+            state.stamp = 1;
+        }
+        return state.stamp;
+    }
+
+    private int column(final double x) {
+        final int c = (int) Math.floor(x / cellSize);
+        return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+    }
+
+    private int row(final double y) {
+        final int r = (int) Math.floor(y / cellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    private int cell(final int column, final int row) {
+        return column * rows + row;
+    }
+}
@@ -0,0 +1,51 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * In-memory frame: numbers written by a producer such as {@link Simulator} and read back as a
+ * {@link TokenSource}, without formatting them as text.
+ */
+public class TokenBuffer implements TokenSource {
+
+    private double[] tokens = new double[1024];
+    private int size;
+    private int position;
+
+    /** Empty the buffer for writing the next frame */
+    public void clear() {
+        size = 0;
+        position = 0;
+    }
+
+    /** Read the frame again from the start */
+    public void rewind() {
+        position = 0;
+    }
+
+    public void add(final int value) {
+        add((double) value);
+    }
+
+    public void add(final double value) {
+        if (size == tokens.length) {
+            tokens = Arrays.copyOf(tokens, size * 2);
+        }
+        tokens[size++] = value;
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) tokens[position++];
+    }
+
+    @Override
+    public double nextDouble() {
+        return tokens[position++];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return position >= size;
+    }
+}
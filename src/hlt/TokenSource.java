@@ -0,0 +1,16 @@
+package hlt;
+
+/**
+ * Sequence of whitespace separated numbers making up one engine message.
+ */
+public interface TokenSource {
+
+    int nextInt();
+
+    double nextDouble();
+
+    /**
+     * @return true once every token of the message has been consumed
+     */
+    boolean isEmpty();
+}
@@ -0,0 +1,149 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Per-turn deadline scheduler.
+ *
+ * The turn clock starts when the frame has been read. Planning is split into phases, each
+ * given a share of the turn budget; a phase's deadline is the sum of its own share and the
+ * shares of the phases before it, so time saved by an early phase is available to later ones.
+ * Phases poll {@link #expired()} and return their best result so far when it turns true.
+ */
+public class TurnScheduler {
+
+    /** The engine allows 2 seconds per turn; keep a margin for GC pauses and I/O */
+    public static final long DEFAULT_TURN_BUDGET_NANOS = 1_500_000_000L;
+
+    private final long turnBudget;
+    private String[] names = new String[0];
+    private double[] shares = new double[0];
+    private long[] used = new long[0];
+    private long[] totalUsed = new long[0];
+    private int[] expiredTurns = new int[0];
+
+    private long turnStart;
+    private int current = -1;
+    private long phaseStart;
+    private volatile long phaseDeadline;
+    // may be polled from planning threads
+    private volatile boolean phaseExpired;
+
+    public TurnScheduler() {
+        this(DEFAULT_TURN_BUDGET_NANOS);
+    }
+
+    public TurnScheduler(final long turnBudgetNanos) {
+        this.turnBudget = turnBudgetNanos;
+        this.turnStart = System.nanoTime();
+    }
+
+    /**
+     * Declare a phase. Phases run in the order they are added.
+     * @param share fraction of the turn budget this phase may use
+     * @return the phase id
+     */
+    public int addPhase(final String name, final double share) {
+        final int id = names.length;
+        names = Arrays.copyOf(names, id + 1);
+        shares = Arrays.copyOf(shares, id + 1);
+        used = Arrays.copyOf(used, id + 1);
+        totalUsed = Arrays.copyOf(totalUsed, id + 1);
+        expiredTurns = Arrays.copyOf(expiredTurns, id + 1);
+        names[id] = name;
+        shares[id] = share;
+        return id;
+    }
+
+    /**
+     * Start the turn clock; called as soon as the frame has been read.
+     */
+    public void startTurn() {
+        turnStart = System.nanoTime();
+        current = -1;
+        Arrays.fill(used, 0);
+    }
+
+    public void beginPhase(final int phase) {
+        endPhase();
+        double share = 0;
+        for (int i = 0; i <= phase; ++i) share += shares[i];
+        current = phase;
+        phaseStart = System.nanoTime();
+        phaseDeadline = turnStart + (long) (Math.min(share, 1.0) * turnBudget);
+        phaseExpired = false;
+    }
+
+    /**
+     * Record the time used by the running phase, if any.
+     */
+    public void endPhase() {
+        if (current == -1) return;
+        final long elapsed = System.nanoTime() - phaseStart;
+        used[current] += elapsed;
+        totalUsed[current] += elapsed;
+        if (phaseExpired) ++expiredTurns[current];
+        current = -1;
+    }
+
+    /**
+     * @return true once the running phase has used up its budget
+     */
+    public boolean expired() {
+        if (!phaseExpired && System.nanoTime() >= phaseDeadline) {
+            phaseExpired = true;
+        }
+        return phaseExpired;
+    }
+
+    /**
+     * @return nanoseconds left until the end of the turn budget
+     */
+    public long remainingNanos() {
+        return turnStart + turnBudget - System.nanoTime();
+    }
+
+    public long getTurnStart() {
+        return turnStart;
+    }
+
+    public int getPhaseCount() {
+        return names.length;
+    }
+
+    public String getPhaseName(final int phase) {
+        return names[phase];
+    }
+
+    /** Budget of a phase on its own, not counting time left over by earlier phases */
+    public long getBudgetNanos(final int phase) {
+        return (long) (shares[phase] * turnBudget);
+    }
+
+    /** Time the phase used this turn */
+    public long getUsedNanos(final int phase) {
+        return used[phase];
+    }
+
+    /** Time the phase used over the whole game */
+    public long getTotalUsedNanos(final int phase) {
+        return totalUsed[phase];
+    }
+
+    /** Number of turns in which the phase ran out of time */
+    public int getExpiredTurns(final int phase) {
+        return expiredTurns[phase];
+    }
+
+    /**
+     * @return one line summary of this turn's phase usage, e.g. for the log
+     */
+    public String summary() {
+        final StringBuilder builder = new StringBuilder("Phases:");
+        for (int i = 0; i < names.length; ++i) {
+            builder.append(' ').append(names[i]).append('=')
+                    .append(used[i] / 1000).append('/').append(getBudgetNanos(i) / 1000).append("us");
+        }
+        return builder.toString();
+    }
+}
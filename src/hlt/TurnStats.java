@@ -0,0 +1,143 @@
+package hlt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Per-turn timings of every stage of a turn: reading the frame, parsing it, each of the
+ * {@link TurnScheduler}'s planning phases, sending the moves, and the whole turn from the
+ * frame arriving to the moves being sent. Each stage has a {@link LatencyHistogram}, and every
+ * turn's timings and ship counts are kept in preallocated rows.
+ *
+ * The read time runs from the frame's first bytes arriving to its last, so it excludes waiting
+ * for the engine and the other bots.
+ *
+ * {@link #write} emits JSON lines: one {@code "turn"} object per turn, then one {@code "phase"}
+ * object per stage with its count, p50, p99 and max in nanoseconds.
+ */
+public class TurnStats {
+
+    // More than the engine's longest game, so that rows are only grown for unusual games
+    private static final int INITIAL_TURNS = 512;
+
+    private final TurnScheduler scheduler;
+
+    // Stages: read, parse, the scheduler's phases, send, total
+    private String[] names;
+    private LatencyHistogram[] histograms;
+    private int columns;
+
+    // Per turn: ships of ours, ships in total, then each stage's nanos
+    private long[] rows = new long[0];
+    private int turns;
+
+    private long readNanos;
+    private long parseNanos;
+    private int ships;
+    private int allShips;
+
+    public TurnStats(final TurnScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void frameRead(final long nanos) {
+        readNanos = nanos;
+    }
+
+    public synchronized void frameParsed(final long nanos, final int ships, final int allShips) {
+        parseNanos = nanos;
+        this.ships = ships;
+        this.allShips = allShips;
+    }
+
+    /**
+     * Close the turn once its moves have been sent, taking the planning phases' timings from the
+     * scheduler.
+     */
+    public synchronized void movesSent(final long sendNanos) {
+        if (names == null) createStages();
+        final int width = columns + 2;
+        if ((turns + 1) * width > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(INITIAL_TURNS, turns * 2) * width);
+        }
+        final int row = turns * width;
+        rows[row] = ships;
+        rows[row + 1] = allShips;
+        int column = 0;
+        record(row, column++, readNanos);
+        record(row, column++, parseNanos);
+        for (int phase = 0; phase < scheduler.getPhaseCount(); ++phase) {
+            record(row, column++, scheduler.getUsedNanos(phase));
+        }
+        record(row, column++, sendNanos);
+        record(row, column, System.nanoTime() - scheduler.getTurnStart());
+        ++turns;
+    }
+
+    public synchronized int getTurnCount() {
+        return turns;
+    }
+
+    public synchronized LatencyHistogram getHistogram(final String stage) {
+        if (names == null) return null;
+        for (int i = 0; i < columns; ++i) {
+            if (names[i].equals(stage)) return histograms[i];
+        }
+        return null;
+    }
+
+    /**
+     * Write every turn so far and the per stage summaries, one JSON object per line.
+     */
+    public synchronized void write(final Writer out) throws IOException {
+        if (names == null) return;
+        final StringBuilder line = new StringBuilder();
+        final int width = columns + 2;
+        for (int turn = 0; turn < turns; ++turn) {
+            final int row = turn * width;
+            line.setLength(0);
+            line.append("{\"type\":\"turn\",\"turn\":").append(turn + 1)
+                    .append(",\"ships\":").append(rows[row])
+                    .append(",\"allShips\":").append(rows[row + 1]);
+            for (int i = 0; i < columns; ++i) {
+                line.append(",\"").append(names[i]).append("\":").append(rows[row + 2 + i]);
+            }
+            out.write(line.append("}\n").toString());
+        }
+        for (int i = 0; i < columns; ++i) {
+            final LatencyHistogram histogram = histograms[i];
+            line.setLength(0);
+            line.append("{\"type\":\"phase\",\"phase\":\"").append(names[i])
+                    .append("\",\"count\":").append(histogram.getCount())
+                    .append(",\"p50\":").append(histogram.getQuantile(0.5))
+                    .append(",\"p99\":").append(histogram.getQuantile(0.99))
+                    .append(",\"max\":").append(histogram.getMax())
+                    .append("}\n");
+            out.write(line.toString());
+        }
+        out.flush();
+    }
+
+    private void record(final int row, final int column, final long nanos) {
+        rows[row + 2 + column] = nanos;
+        histograms[column].record(nanos);
+    }
+
+    // Phases are declared by the bot after the scheduler is created, so wait for the first turn
+    private void createStages() {
+        columns = scheduler.getPhaseCount() + 4;
+        names = new String[columns];
+        histograms = new LatencyHistogram[columns];
+        int column = 0;
+        names[column++] = "read";
+        names[column++] = "parse";
+        for (int phase = 0; phase < scheduler.getPhaseCount(); ++phase) {
+            names[column++] = scheduler.getPhaseName(phase);
+        }
+        names[column++] = "send";
+        names[column] = "total";
+        for (int i = 0; i < columns; ++i) histograms[i] = new LatencyHistogram();
+        rows = new long[INITIAL_TURNS * (columns + 2)];
+    }
+}
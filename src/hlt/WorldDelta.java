@@ -0,0 +1,196 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * What changed between the previous frame and the current one.
+ *
+ * Entities are matched across frames by id (ships by owner and id), against a record of each
+ * entity's state as of the last frame it was seen in. Ships still in the game are reported by
+ * their slot in the current {@link WorldState}; destroyed entities by id, with their last known
+ * state. On the first frame every ship is reported as spawned.
+ */
+public class WorldDelta {
+
+    private static final int INITIAL_IDS = 64;
+    // Turn stamp of records never seen
+    private static final int NEVER = Integer.MIN_VALUE;
+
+    private int turn = -1;
+
+    // Per owner, by ship id: state as of the last frame the ship was seen in, and that frame's turn
+    private final double[][] shipX = new double[Constants.MAX_PLAYERS][INITIAL_IDS];
+    private final double[][] shipY = new double[Constants.MAX_PLAYERS][INITIAL_IDS];
+    private final int[][] shipStatus = new int[Constants.MAX_PLAYERS][INITIAL_IDS];
+    private final int[][] shipSeen = new int[Constants.MAX_PLAYERS][INITIAL_IDS];
+    // Ships of the previous frame
+    private int previousShips;
+    private int[] previousOwners = new int[INITIAL_IDS];
+    private int[] previousIds = new int[INITIAL_IDS];
+
+    // By planet id: owner as of the last frame the planet was seen in, and that frame's turn
+    private int[] planetOwner = new int[INITIAL_IDS];
+    private int[] planetSeen = new int[INITIAL_IDS];
+    private int previousPlanets;
+    private int[] previousPlanetIds = new int[INITIAL_IDS];
+
+    private final SlotList spawned = new SlotList();
+    private final SlotList moved = new SlotList();
+    // slot, previous docking status ordinal
+    private final SlotList dockingChanged = new SlotList();
+    // owner, id
+    private final SlotList destroyed = new SlotList();
+    // slot, previous owner
+    private final SlotList planetOwnerChanged = new SlotList();
+    // id, last owner
+    private final SlotList planetsDestroyed = new SlotList();
+
+    public WorldDelta() {
+        for (int owner = 0; owner < Constants.MAX_PLAYERS; ++owner) {
+            Arrays.fill(shipSeen[owner], NEVER);
+        }
+        Arrays.fill(planetSeen, NEVER);
+    }
+
+    /**
+     * Compare the world's current frame against the records, then update the records.
+     */
+    void compute(final WorldState world) {
+        turn = world.getTurn();
+        final int last = turn - 1;
+        spawned.clear();
+        moved.clear();
+        dockingChanged.clear();
+        destroyed.clear();
+        planetOwnerChanged.clear();
+        planetsDestroyed.clear();
+
+        for (int i = 0; i < previousShips; ++i) {
+            if (world.getShipSlot(previousOwners[i], previousIds[i]) == -1) {
+                destroyed.add(previousOwners[i], previousIds[i]);
+            }
+        }
+
+        final int shipCount = world.getShipCount();
+        ensurePreviousShips(shipCount);
+        for (int slot = 0; slot < shipCount; ++slot) {
+            final int owner = world.getShipOwner(slot);
+            final int id = world.getShipId(slot);
+            ensureShipRecords(owner, id);
+            final double x = world.getShipX(slot);
+            final double y = world.getShipY(slot);
+            final int status = world.getShipDockingStatus(slot);
+            if (shipSeen[owner][id] != last) {
+                spawned.add(slot, 0);
+            } else {
+                if (x != shipX[owner][id] || y != shipY[owner][id]) moved.add(slot, 0);
+                if (status != shipStatus[owner][id]) dockingChanged.add(slot, shipStatus[owner][id]);
+            }
+            shipX[owner][id] = x;
+            shipY[owner][id] = y;
+            shipStatus[owner][id] = status;
+            shipSeen[owner][id] = turn;
+            previousOwners[slot] = owner;
+            previousIds[slot] = id;
+        }
+        previousShips = shipCount;
+
+        for (int i = 0; i < previousPlanets; ++i) {
+            final int id = previousPlanetIds[i];
+            if (world.getPlanetSlot(id) == -1) planetsDestroyed.add(id, planetOwner[id]);
+        }
+        final int planetCount = world.getPlanetCount();
+        if (previousPlanetIds.length < planetCount) previousPlanetIds = new int[planetCount];
+        for (int slot = 0; slot < planetCount; ++slot) {
+            final int id = world.getPlanetId(slot);
+            if (id >= planetSeen.length) {
+                final int size = Math.max(id + 1, planetSeen.length * 2);
+                planetOwner = Arrays.copyOf(planetOwner, size);
+                final int old = planetSeen.length;
+                planetSeen = Arrays.copyOf(planetSeen, size);
+                Arrays.fill(planetSeen, old, size, NEVER);
+            }
+            final int owner = world.getPlanetOwner(slot);
+            if (planetSeen[id] == last && owner != planetOwner[id]) {
+                planetOwnerChanged.add(slot, planetOwner[id]);
+            }
+            planetOwner[id] = owner;
+            planetSeen[id] = turn;
+            previousPlanetIds[slot] = id;
+        }
+        previousPlanets = planetCount;
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    /** Ships that appeared this frame */
+    public int getSpawnedCount() { return spawned.size; }
+    public int getSpawnedSlot(final int i) { return spawned.first[i]; }
+
+    /** Ships whose position changed */
+    public int getMovedCount() { return moved.size; }
+    public int getMovedSlot(final int i) { return moved.first[i]; }
+
+    /** Ships whose docking status changed */
+    public int getDockingChangedCount() { return dockingChanged.size; }
+    public int getDockingChangedSlot(final int i) { return dockingChanged.first[i]; }
+    public Ship.DockingStatus getPreviousDockingStatus(final int i) {
+        return Ship.DockingStatus.values()[dockingChanged.second[i]];
+    }
+
+    /** Ships that were in the previous frame but not in this one */
+    public int getDestroyedCount() { return destroyed.size; }
+    public int getDestroyedOwner(final int i) { return destroyed.first[i]; }
+    public int getDestroyedId(final int i) { return destroyed.second[i]; }
+
+    /** Planets whose owner changed; owners are -1 for unowned */
+    public int getPlanetOwnerChangedCount() { return planetOwnerChanged.size; }
+    public int getPlanetOwnerChangedSlot(final int i) { return planetOwnerChanged.first[i]; }
+    public int getPreviousPlanetOwner(final int i) { return planetOwnerChanged.second[i]; }
+
+    /** Planets that were in the previous frame but not in this one */
+    public int getPlanetsDestroyedCount() { return planetsDestroyed.size; }
+    public int getDestroyedPlanetId(final int i) { return planetsDestroyed.first[i]; }
+    public int getDestroyedPlanetOwner(final int i) { return planetsDestroyed.second[i]; }
+
+    private void ensureShipRecords(final int owner, final int id) {
+        if (id < shipSeen[owner].length) return;
+        final int size = Math.max(id + 1, shipSeen[owner].length * 2);
+        final int old = shipSeen[owner].length;
+        shipX[owner] = Arrays.copyOf(shipX[owner], size);
+        shipY[owner] = Arrays.copyOf(shipY[owner], size);
+        shipStatus[owner] = Arrays.copyOf(shipStatus[owner], size);
+        shipSeen[owner] = Arrays.copyOf(shipSeen[owner], size);
+        Arrays.fill(shipSeen[owner], old, size, NEVER);
+    }
+
+    private void ensurePreviousShips(final int count) {
+        if (previousIds.length >= count) return;
+        final int size = Math.max(count, previousIds.length * 2);
+        previousOwners = new int[size];
+        previousIds = new int[size];
+    }
+
+    // Growable list of int pairs
+    private static final class SlotList {
+        int[] first = new int[INITIAL_IDS];
+        int[] second = new int[INITIAL_IDS];
+        int size;
+
+        void add(final int a, final int b) {
+            if (size == first.length) {
+                first = Arrays.copyOf(first, size * 2);
+                second = Arrays.copyOf(second, size * 2);
+            }
+            first[size] = a;
+            second[size] = b;
+            ++size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package hlt;
+
+/**
+ * Receives what changed in the world after every map update.
+ */
+public interface WorldListener {
+    void worldUpdated(GameMap gameMap, WorldDelta delta);
+}
@@ -0,0 +1,372 @@
+package hlt;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays snapshot of a single game frame.
+ *
+ * Ships and planets are stored in parallel primitive arrays indexed by a dense slot, in the
+ * order the engine sends them. Ships of a player occupy a contiguous range of slots. The arrays
+ * are reused between turns and only grow, so parsing a frame allocates nothing once the game
+ * has reached its peak entity count.
+ *
+ * Code that still wants the object API can ask for {@link Ship}/{@link Planet} views. Views are
+ * created lazily and reused across turns for entities whose state did not change.
+ */
+public class WorldState {
+
+    private static final int INITIAL_SHIPS = 64;
+    private static final int INITIAL_PLANETS = 32;
+
+    private int turn = -1;
+
+    // Players
+    private int playerCount;
+    private final int[] playerId = new int[Constants.MAX_PLAYERS];
+    private final int[] playerShipStart = new int[Constants.MAX_PLAYERS];
+    private final int[] playerShipCount = new int[Constants.MAX_PLAYERS];
+
+    // Ships
+    private int shipCount;
+    private int[] shipId = new int[INITIAL_SHIPS];
+    private int[] shipOwner = new int[INITIAL_SHIPS];
+    private double[] shipX = new double[INITIAL_SHIPS];
+    private double[] shipY = new double[INITIAL_SHIPS];
+    private double[] shipRadius = new double[INITIAL_SHIPS];
+    private int[] shipHealth = new int[INITIAL_SHIPS];
+    private int[] shipDockingStatus = new int[INITIAL_SHIPS];
+    private int[] shipDockedPlanet = new int[INITIAL_SHIPS];
+    private int[] shipDockingProgress = new int[INITIAL_SHIPS];
+    private int[] shipCooldown = new int[INITIAL_SHIPS];
+
+    // Planets
+    private int planetCount;
+    private int[] planetId = new int[INITIAL_PLANETS];
+    private int[] planetOwner = new int[INITIAL_PLANETS];
+    private double[] planetX = new double[INITIAL_PLANETS];
+    private double[] planetY = new double[INITIAL_PLANETS];
+    private double[] planetRadius = new double[INITIAL_PLANETS];
+    private int[] planetHealth = new int[INITIAL_PLANETS];
+    private int[] planetDockingSpots = new int[INITIAL_PLANETS];
+    private int[] planetCurrentProduction = new int[INITIAL_PLANETS];
+    private int[] planetRemainingProduction = new int[INITIAL_PLANETS];
+    private int[] planetDockedStart = new int[INITIAL_PLANETS];
+    private int[] planetDockedCount = new int[INITIAL_PLANETS];
+    // docked ship ids of all planets, addressed through planetDockedStart/planetDockedCount
+    private int[] dockedShipIds = new int[INITIAL_SHIPS];
+
+    // ID -> slot lookups, -1 when absent
+    private final int[][] shipSlotById = new int[Constants.MAX_PLAYERS][];
+    private int[] planetSlotById = new int[INITIAL_PLANETS];
+
+    // Views, cached per ID so that unchanged entities keep their object across turns
+    private final Ship[][] shipViews = new Ship[Constants.MAX_PLAYERS][];
+    private Planet[] planetViews = new Planet[INITIAL_PLANETS];
+
+    public WorldState() {
+        for (int i = 0; i < Constants.MAX_PLAYERS; ++i) {
+            shipSlotById[i] = new int[INITIAL_SHIPS];
+            Arrays.fill(shipSlotById[i], -1);
+            shipViews[i] = new Ship[INITIAL_SHIPS];
+        }
+        Arrays.fill(planetSlotById, -1);
+    }
+
+    /**
+     * Replace the snapshot with the next frame from the engine.
+     * @param frame the tokens of a full frame
+     */
+    public void update(final TokenSource frame) {
+        clearLookups();
+        ++turn;
+
+        playerCount = frame.nextInt();
+        shipCount = 0;
+        for (int p = 0; p < playerCount; ++p) {
+            final int owner = frame.nextInt();
+            final int count = frame.nextInt();
+            playerId[p] = owner;
+            playerShipStart[p] = shipCount;
+            playerShipCount[p] = count;
+            ensureShipCapacity(shipCount + count);
+
+            for (int i = 0; i < count; ++i) {
+                final int slot = shipCount++;
+                final int id = frame.nextInt();
+                shipId[slot] = id;
+                shipOwner[slot] = owner;
+                shipX[slot] = frame.nextDouble();
+                shipY[slot] = frame.nextDouble();
+                shipRadius[slot] = Constants.SHIP_RADIUS;
+                shipHealth[slot] = frame.nextInt();
+                // Ignoring velocity(x,y) which is always (0,0) in current version.
+                frame.nextDouble();
+                frame.nextDouble();
+                shipDockingStatus[slot] = frame.nextInt();
+                shipDockedPlanet[slot] = frame.nextInt();
+                shipDockingProgress[slot] = frame.nextInt();
+                shipCooldown[slot] = frame.nextInt();
+                setShipSlot(owner, id, slot);
+            }
+        }
+
+        planetCount = frame.nextInt();
+        ensurePlanetCapacity(planetCount);
+        int dockedTotal = 0;
+        for (int slot = 0; slot < planetCount; ++slot) {
+            final int id = frame.nextInt();
+            planetId[slot] = id;
+            planetX[slot] = frame.nextDouble();
+            planetY[slot] = frame.nextDouble();
+            planetHealth[slot] = frame.nextInt();
+            planetRadius[slot] = frame.nextDouble();
+            planetDockingSpots[slot] = frame.nextInt();
+            planetCurrentProduction[slot] = frame.nextInt();
+            planetRemainingProduction[slot] = frame.nextInt();
+            final int hasOwner = frame.nextInt();
+            final int ownerCandidate = frame.nextInt();
+            planetOwner[slot] = hasOwner == 1 ? ownerCandidate : -1;
+
+            final int dockedCount = frame.nextInt();
+            ensureDockedCapacity(dockedTotal + dockedCount);
+            planetDockedStart[slot] = dockedTotal;
+            planetDockedCount[slot] = dockedCount;
+            for (int i = 0; i < dockedCount; ++i) {
+                dockedShipIds[dockedTotal++] = frame.nextInt();
+            }
+            setPlanetSlot(id, slot);
+        }
+
+        if (!frame.isEmpty()) {
+            throw new IllegalStateException("Failed to parse data from Halite game engine. Please contact maintainers.");
+        }
+    }
+
+    public int getTurn() {
+        return turn;
+    }
+
+    // ---------------------------------------------------------------- players
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public int getPlayerId(final int index) {
+        return playerId[index];
+    }
+
+    /** First ship slot of the player at the given index */
+    public int getPlayerShipStart(final int index) {
+        return playerShipStart[index];
+    }
+
+    public int getPlayerShipCount(final int index) {
+        return playerShipCount[index];
+    }
+
+    // ---------------------------------------------------------------- ships
+
+    public int getShipCount() {
+        return shipCount;
+    }
+
+    /**
+     * @return the slot of the ship, or -1 if it is not in the current frame
+     */
+    public int getShipSlot(final int owner, final int id) {
+        if (owner < 0 || owner >= Constants.MAX_PLAYERS) return -1;
+        final int[] lookup = shipSlotById[owner];
+        return id >= 0 && id < lookup.length ? lookup[id] : -1;
+    }
+
+    public int getShipId(final int slot) { return shipId[slot]; }
+    public int getShipOwner(final int slot) { return shipOwner[slot]; }
+    public double getShipX(final int slot) { return shipX[slot]; }
+    public double getShipY(final int slot) { return shipY[slot]; }
+    public double getShipRadius(final int slot) { return shipRadius[slot]; }
+    public int getShipHealth(final int slot) { return shipHealth[slot]; }
+    public int getShipDockingStatus(final int slot) { return shipDockingStatus[slot]; }
+    public int getShipDockedPlanet(final int slot) { return shipDockedPlanet[slot]; }
+    public int getShipDockingProgress(final int slot) { return shipDockingProgress[slot]; }
+    public int getShipCooldown(final int slot) { return shipCooldown[slot]; }
+
+    public boolean isShipUndocked(final int slot) {
+        return shipDockingStatus[slot] == Ship.DockingStatus.Undocked.ordinal();
+    }
+
+    // Raw arrays for hot loops. Only the first getShipCount() entries are valid.
+    public double[] shipXs() { return shipX; }
+    public double[] shipYs() { return shipY; }
+    public double[] shipRadii() { return shipRadius; }
+    public int[] shipOwners() { return shipOwner; }
+
+    /**
+     * Get the Ship view of a slot. Views of ships whose state is unchanged since the last
+     * time they were requested are reused.
+     */
+    public Ship getShip(final int slot) {
+        final int owner = shipOwner[slot];
+        final int id = shipId[slot];
+        Ship[] views = shipViews[owner];
+        if (id >= views.length) {
+            views = shipViews[owner] = Arrays.copyOf(views, grow(views.length, id + 1));
+        }
+        final Ship cached = views[id];
+        final Ship.DockingStatus status = Ship.DockingStatus.values()[shipDockingStatus[slot]];
+        if (cached != null
+                && cached.getXPos() == shipX[slot] && cached.getYPos() == shipY[slot]
+                && cached.getHealth() == shipHealth[slot]
+                && cached.getDockingStatus() == status
+                && cached.getDockedPlanet() == shipDockedPlanet[slot]
+                && cached.getDockingProgress() == shipDockingProgress[slot]
+                && cached.getWeaponCooldown() == shipCooldown[slot]) {
+            return cached;
+        }
+        final Ship ship = new Ship(owner, id, shipX[slot], shipY[slot], shipHealth[slot], status,
+                shipDockedPlanet[slot], shipDockingProgress[slot], shipCooldown[slot]);
+        views[id] = ship;
+        return ship;
+    }
+
+    // ---------------------------------------------------------------- planets
+
+    public int getPlanetCount() {
+        return planetCount;
+    }
+
+    /**
+     * @return the slot of the planet, or -1 if it is not in the current frame
+     */
+    public int getPlanetSlot(final int id) {
+        return id >= 0 && id < planetSlotById.length ? planetSlotById[id] : -1;
+    }
+
+    public int getPlanetId(final int slot) { return planetId[slot]; }
+    public int getPlanetOwner(final int slot) { return planetOwner[slot]; }
+    public double getPlanetX(final int slot) { return planetX[slot]; }
+    public double getPlanetY(final int slot) { return planetY[slot]; }
+    public double getPlanetRadius(final int slot) { return planetRadius[slot]; }
+    public int getPlanetHealth(final int slot) { return planetHealth[slot]; }
+    public int getPlanetDockingSpots(final int slot) { return planetDockingSpots[slot]; }
+    public int getPlanetCurrentProduction(final int slot) { return planetCurrentProduction[slot]; }
+    public int getPlanetRemainingProduction(final int slot) { return planetRemainingProduction[slot]; }
+    public int getPlanetDockedCount(final int slot) { return planetDockedCount[slot]; }
+
+    public int getPlanetDockedShip(final int slot, final int index) {
+        return dockedShipIds[planetDockedStart[slot] + index];
+    }
+
+    // Raw arrays for hot loops. Only the first getPlanetCount() entries are valid.
+    public double[] planetXs() { return planetX; }
+    public double[] planetYs() { return planetY; }
+    public double[] planetRadii() { return planetRadius; }
+
+    /**
+     * Get the Planet view of a slot. Views of planets whose state is unchanged since the last
+     * time they were requested are reused.
+     */
+    public Planet getPlanet(final int slot) {
+        final int id = planetId[slot];
+        if (id >= planetViews.length) {
+            planetViews = Arrays.copyOf(planetViews, grow(planetViews.length, id + 1));
+        }
+        final Planet cached = planetViews[id];
+        if (cached != null && planetUnchanged(cached, slot)) {
+            return cached;
+        }
+        final int dockedCount = planetDockedCount[slot];
+        final int start = planetDockedStart[slot];
+        final int[] dockedShips = Arrays.copyOfRange(dockedShipIds, start, start + dockedCount);
+        final Planet planet = new Planet(planetOwner[slot], id, planetX[slot], planetY[slot], planetHealth[slot],
+                planetRadius[slot], planetDockingSpots[slot], planetCurrentProduction[slot],
+                planetRemainingProduction[slot], dockedShips);
+        planetViews[id] = planet;
+        return planet;
+    }
+
+    private boolean planetUnchanged(final Planet planet, final int slot) {
+        if (planet.getOwner() != planetOwner[slot]
+                || planet.getHealth() != planetHealth[slot]
+                || planet.getCurrentProduction() != planetCurrentProduction[slot]
+                || planet.getRemainingProduction() != planetRemainingProduction[slot]
+                || planet.getDockedCount() != planetDockedCount[slot]) {
+            return false;
+        }
+        for (int i = 0; i < planet.getDockedCount(); ++i) {
+            if (planet.getDockedShip(i) != getPlanetDockedShip(slot, i)) return false;
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------- storage
+
+    private void clearLookups() {
+        for (int slot = 0; slot < shipCount; ++slot) {
+            shipSlotById[shipOwner[slot]][shipId[slot]] = -1;
+        }
+        for (int slot = 0; slot < planetCount; ++slot) {
+            planetSlotById[planetId[slot]] = -1;
+        }
+    }
+
+    private void setShipSlot(final int owner, final int id, final int slot) {
+        int[] lookup = shipSlotById[owner];
+        if (id >= lookup.length) {
+            final int oldLength = lookup.length;
+            lookup = shipSlotById[owner] = Arrays.copyOf(lookup, grow(oldLength, id + 1));
+            Arrays.fill(lookup, oldLength, lookup.length, -1);
+        }
+        lookup[id] = slot;
+    }
+
+    private void setPlanetSlot(final int id, final int slot) {
+        if (id >= planetSlotById.length) {
+            final int oldLength = planetSlotById.length;
+            planetSlotById = Arrays.copyOf(planetSlotById, grow(oldLength, id + 1));
+            Arrays.fill(planetSlotById, oldLength, planetSlotById.length, -1);
+        }
+        planetSlotById[id] = slot;
+    }
+
+    private void ensureShipCapacity(final int capacity) {
+        if (capacity <= shipId.length) return;
+        final int size = grow(shipId.length, capacity);
+        shipId = Arrays.copyOf(shipId, size);
+        shipOwner = Arrays.copyOf(shipOwner, size);
+        shipX = Arrays.copyOf(shipX, size);
+        shipY = Arrays.copyOf(shipY, size);
+        shipRadius = Arrays.copyOf(shipRadius, size);
+        shipHealth = Arrays.copyOf(shipHealth, size);
+        shipDockingStatus = Arrays.copyOf(shipDockingStatus, size);
+        shipDockedPlanet = Arrays.copyOf(shipDockedPlanet, size);
+        shipDockingProgress = Arrays.copyOf(shipDockingProgress, size);
+        shipCooldown = Arrays.copyOf(shipCooldown, size);
+    }
+
+    private void ensurePlanetCapacity(final int capacity) {
+        if (capacity <= planetId.length) return;
+        final int size = grow(planetId.length, capacity);
+        planetId = Arrays.copyOf(planetId, size);
+        planetOwner = Arrays.copyOf(planetOwner, size);
+        planetX = Arrays.copyOf(planetX, size);
+        planetY = Arrays.copyOf(planetY, size);
+        planetRadius = Arrays.copyOf(planetRadius, size);
+        planetHealth = Arrays.copyOf(planetHealth, size);
+        planetDockingSpots = Arrays.copyOf(planetDockingSpots, size);
+        planetCurrentProduction = Arrays.copyOf(planetCurrentProduction, size);
+        planetRemainingProduction = Arrays.copyOf(planetRemainingProduction, size);
+        planetDockedStart = Arrays.copyOf(planetDockedStart, size);
+        planetDockedCount = Arrays.copyOf(planetDockedCount, size);
+    }
+
+    private void ensureDockedCapacity(final int capacity) {
+        if (capacity > dockedShipIds.length) {
+            dockedShipIds = Arrays.copyOf(dockedShipIds, grow(dockedShipIds.length, capacity));
+        }
+    }
+
+    private static int grow(final int current, final int required) {
+        return Math.max(required, current * 2);
+    }
+}